@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Stub of Android's {@link android.os.Build} for benchmarks on a plain JVM.
+ *
+ * @author flx
+ */
+public class Build {
+
+    /**
+     * Stub of {@link android.os.Build.VERSION}.
+     */
+    public static class VERSION {
+
+        public static final int SDK_INT = VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Stub of {@link android.os.Build.VERSION_CODES}.
+     */
+    public static class VERSION_CODES {
+
+        public static final int FROYO = 8;
+
+        public static final int LOLLIPOP = 21;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+/**
+ * Stub of Android's {@link android.util.Log} for benchmarks on a plain JVM.
+ * <p/>
+ * Nothing gets written anywhere, only the cost of logg0r itself is measured.
+ *
+ * @author flx
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+
+    public static final int DEBUG = 3;
+
+    public static final int INFO = 4;
+
+    public static final int WARN = 5;
+
+    public static final int ERROR = 6;
+
+    public static final int ASSERT = 7;
+
+    private Log() {
+    }
+
+    public static int v(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int v(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static int d(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int d(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static int i(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int i(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static int w(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int w(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static int e(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int e(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static int wtf(final String tag, final String msg) {
+        return write(tag, msg);
+    }
+
+    public static int wtf(final String tag, final String msg, final Throwable tr) {
+        return write(tag, msg);
+    }
+
+    public static boolean isLoggable(final String tag, final int level) {
+        return level >= INFO;
+    }
+
+    private static int write(final String tag, final String msg) {
+        // depend on the message, so it can't be optimized away
+        return tag.length() + msg.length();
+    }
+}
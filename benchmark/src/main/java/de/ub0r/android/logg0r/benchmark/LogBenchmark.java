@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import de.ub0r.android.logg0r.Log;
+
+/**
+ * Benchmarks for the hot paths of {@link Log}.
+ * <p/>
+ * All calls end up in a stubbed {@link android.util.Log}, which does not write anything. Run with
+ * {@code -prof gc} to get the allocation rate next to the throughput.
+ *
+ * @author flx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogBenchmark {
+
+    private static final String TAG = "LogBenchmark";
+
+    private int mCount;
+
+    private String mName;
+
+    private Throwable mThrowable;
+
+    @Setup
+    public void setup() {
+        Log.setMinLevel(Log.DEBUG);
+        mCount = 42;
+        mName = "benchmark";
+        mThrowable = new RuntimeException("benchmark");
+    }
+
+    /**
+     * Call {@link android.util.Log} directly, for reference.
+     */
+    @Benchmark
+    public int baseline() {
+        return android.util.Log.d(TAG, "plain message");
+    }
+
+    /**
+     * Message without any arguments.
+     */
+    @Benchmark
+    public int plain() {
+        return Log.d(TAG, "plain message");
+    }
+
+    /**
+     * Message with '%' placeholders.
+     */
+    @Benchmark
+    public int format() {
+        return Log.d(TAG, "count: %d, name: %s", mCount, mName);
+    }
+
+    /**
+     * Message with '%' placeholders, more arguments than the fixed arity overloads take.
+     */
+    @Benchmark
+    public int formatVarargs() {
+        return Log.d(TAG, "%s %s %s %s %d", mName, mName, mName, mName, mCount);
+    }
+
+    /**
+     * Message without placeholders, arguments get concatenated.
+     */
+    @Benchmark
+    public int concat() {
+        return Log.d(TAG, "count: ", mCount, ", name: ", mName);
+    }
+
+    /**
+     * Throwable as last argument.
+     */
+    @Benchmark
+    public int throwable() {
+        return Log.d(TAG, "failed: %s", mName, mThrowable);
+    }
+
+    /**
+     * Placeholder not matching its argument, falls back to concatenation after an
+     * {@link java.util.IllegalFormatException}.
+     */
+    @Benchmark
+    public int malformed() {
+        return Log.d(TAG, "ratio: %.2f", mName);
+    }
+
+    /**
+     * Message below the minimum level.
+     */
+    @Benchmark
+    public int disabled() {
+        return Log.v(TAG, "count: %d, name: %s", mCount, mName);
+    }
+
+    /**
+     * Structured event with primitive fields.
+     */
+    @Benchmark
+    public int event() {
+        return Log.at(Log.DEBUG, TAG).kv("count", mCount).kv("name", mName).msg("event").log();
+    }
+
+    /**
+     * Structured event below the minimum level.
+     */
+    @Benchmark
+    public int eventDisabled() {
+        return Log.at(Log.VERBOSE, TAG).kv("count", mCount).kv("name", mName).msg("event").log();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log writer.
+ * <p/>
+ * Callers publish unformatted records into a bounded, pre-allocated ring buffer. Publishing is
+ * lock-free: producers claim a sequence with a CAS on the tail cursor and mark the slot as
+ * published when done. A single background thread formats and writes all published records.
+ * <p/>
+ * Arguments are formatted on the background thread, so mutable arguments may be logged with the
+ * state they have at that time.
+ *
+ * @author flx
+ */
+final class AsyncLog implements Runnable {
+
+    private static final String THREAD_NAME = "logg0r-async";
+
+    /**
+     * Maximum number of records written before checking for shutdown.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private static final long IDLE_PARK_NANOS = 100L * 1000L * 1000L;
+
+    private static final long WAIT_PARK_NANOS = 100L * 1000L;
+
+    /**
+     * A single log record.
+     */
+    private static final class Record {
+
+        int level;
+        String tag;
+        String msg;
+        Object[] args;
+        Throwable tr;
+
+        void set(final int level, final String tag, final String msg, final Object[] args,
+                final Throwable tr) {
+            this.level = level;
+            this.tag = tag;
+            this.msg = msg;
+            this.args = args;
+            this.tr = tr;
+        }
+
+        void clear() {
+            set(0, null, null, null, null);
+        }
+    }
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int mPolicy;
+    private final Record[] mSlots;
+
+    /**
+     * Sequence last published into each slot.
+     */
+    private final AtomicLongArray mPublished;
+
+    /**
+     * Next sequence to be claimed by a producer.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Next sequence to be consumed. Moved by the consumer and, for
+     * {@link Log#OVERFLOW_DROP_OLDEST}, by producers discarding the oldest record.
+     */
+    private final AtomicLong mHead = new AtomicLong();
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final Thread mThread;
+
+    /**
+     * All sequences below this one are written.
+     */
+    private volatile long mDone = 0;
+
+    private volatile boolean mSleeping = false;
+
+    private volatile boolean mRunning = true;
+
+    /**
+     * Create and start an asynchronous log writer.
+     *
+     * @param capacity       number of records to buffer, rounded up to a power of two
+     * @param overflowPolicy one of {@code Log.OVERFLOW_*}
+     */
+    AsyncLog(final int capacity, final int overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (overflowPolicy != Log.OVERFLOW_DROP_NEWEST
+                && overflowPolicy != Log.OVERFLOW_DROP_OLDEST
+                && overflowPolicy != Log.OVERFLOW_BLOCK) {
+            throw new IllegalArgumentException("Invalid overflow policy: " + overflowPolicy);
+        }
+        int c = 1;
+        while (c < capacity) {
+            c <<= 1;
+        }
+        mCapacity = c;
+        mMask = c - 1;
+        mPolicy = overflowPolicy;
+        mSlots = new Record[c];
+        mPublished = new AtomicLongArray(c);
+        for (int i = 0; i < c; i++) {
+            mSlots[i] = new Record();
+            mPublished.set(i, -1L);
+        }
+        mThread = new Thread(this, THREAD_NAME);
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+    /**
+     * Publish a record.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message
+     * @param args  arguments, last object may be a throwable
+     * @param tr    throwable, used only if args is null
+     * @return false, if the record was dropped
+     */
+    boolean publish(final int level, final String tag, final String msg, final Object[] args,
+            final Throwable tr) {
+        long seq;
+        while (true) {
+            seq = mTail.get();
+            final long head = mHead.get();
+            if (seq - head >= mCapacity) {
+                if (!makeRoom(head)) {
+                    mDropped.incrementAndGet();
+                    return false;
+                }
+                continue;
+            }
+            if (mTail.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+        final int i = (int) seq & mMask;
+        mSlots[i].set(level, tag, msg, args, tr);
+        mPublished.set(i, seq);
+        if (mSleeping) {
+            LockSupport.unpark(mThread);
+        }
+        if (!mRunning) {
+            // shutdown() may have drained the buffer already, write the record right here
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * Handle a full buffer according to the overflow policy.
+     *
+     * @param head current head
+     * @return false, if the new record should be dropped
+     */
+    private boolean makeRoom(final long head) {
+        switch (mPolicy) {
+            case Log.OVERFLOW_DROP_OLDEST:
+                // the oldest slot may still be written by a slow producer, do not touch it then
+                if (mPublished.get((int) head & mMask) == head
+                        && mHead.compareAndSet(head, head + 1)) {
+                    mDropped.incrementAndGet();
+                } else {
+                    Thread.yield();
+                }
+                return true;
+            case Log.OVERFLOW_BLOCK:
+                if (!mRunning || Thread.currentThread() == mThread) {
+                    return false;
+                }
+                LockSupport.unpark(mThread);
+                LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Take the oldest published record.
+     *
+     * @param r record to copy the data to
+     * @return false, if there is nothing to consume
+     */
+    private boolean poll(final Record r) {
+        while (true) {
+            final long head = mHead.get();
+            final Record slot = mSlots[(int) head & mMask];
+            if (mPublished.get((int) head & mMask) != head) {
+                return false;
+            }
+            r.set(slot.level, slot.tag, slot.msg, slot.args, slot.tr);
+            // slot is not reused before head moves on, a failing CAS means it was dropped
+            if (mHead.compareAndSet(head, head + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static void write(final Record r) {
+        try {
+            if (r.args == null) {
+                Log.println(r.level, r.tag, r.msg, r.tr);
+            } else {
+                Log.printf(r.level, r.tag, r.msg, r.args);
+            }
+        } catch (RuntimeException e) {
+            // keep the writer alive, nothing sane to do about it
+        }
+    }
+
+    @Override
+    public void run() {
+        final Record r = new Record();
+        while (true) {
+            int n = 0;
+            while (n < BATCH_SIZE && poll(r)) {
+                write(r);
+                r.clear();
+                mDone = mHead.get();
+                n++;
+            }
+            if (n > 0) {
+                continue;
+            }
+            mDone = mHead.get();
+            if (!mRunning) {
+                break;
+            }
+            mSleeping = true;
+            if (mPublished.get((int) mHead.get() & mMask) != mHead.get()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            mSleeping = false;
+        }
+    }
+
+    /**
+     * Wait until all records published before this call are written.
+     */
+    void flush() {
+        if (Thread.currentThread() == mThread) {
+            return;
+        }
+        final long target = mTail.get();
+        while (mDone < target && mThread.isAlive()) {
+            LockSupport.unpark(mThread);
+            LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Write all pending records and stop the background thread.
+     */
+    void shutdown() {
+        mRunning = false;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // pick up records published while shutting down
+        drain();
+    }
+
+    /**
+     * Write all published records on the calling thread.
+     */
+    private void drain() {
+        final Record r = new Record();
+        while (poll(r)) {
+            write(r);
+        }
+    }
+
+    /**
+     * @return number of records dropped because the buffer was full
+     */
+    long getDropped() {
+        return mDropped.get();
+    }
+}
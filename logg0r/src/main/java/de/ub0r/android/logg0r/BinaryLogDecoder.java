@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Reads files written by {@link BinaryLogSink} and formats their messages. Does not depend on
+ * android classes, run it on a desktop to decode collected files:
+ * <pre>
+ * java -cp logg0r.jar de.ub0r.android.logg0r.BinaryLogDecoder app.l0g [more.l0g ...]
+ * </pre>
+ *
+ * @author flx
+ */
+public class BinaryLogDecoder {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream mIn;
+
+    /**
+     * String table. Index 0 is unused, ids start at 1.
+     */
+    private final ArrayList<String> mStrings = new ArrayList<String>();
+
+    /**
+     * Parsed templates, same index as {@link #mStrings}.
+     */
+    private final ArrayList<LogTemplate> mTemplates = new ArrayList<LogTemplate>();
+
+    private byte[] mBuffer = new byte[256];
+    private Object[] mArgs = new Object[4];
+
+    private long mTime;
+    private long mThreadId;
+    private int mLevel;
+    private String mTag;
+    private LogTemplate mTemplate;
+    private int mCount;
+    private String mStackTrace;
+
+    /**
+     * Create a decoder.
+     *
+     * @param in stream written by {@link BinaryLogSink}
+     */
+    public BinaryLogDecoder(final InputStream in) {
+        mIn = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        resetStrings();
+    }
+
+    /**
+     * Decode files to stdout.
+     *
+     * @param args file names
+     * @throws IOException if reading fails
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BinaryLogDecoder file [file ...]");
+            System.exit(1);
+        }
+        final Writer out = new OutputStreamWriter(System.out, "UTF-8");
+        for (String name : args) {
+            final InputStream in = new FileInputStream(name);
+            try {
+                new BinaryLogDecoder(in).copyTo(out);
+            } finally {
+                in.close();
+            }
+        }
+        out.flush();
+    }
+
+    private void resetStrings() {
+        mStrings.clear();
+        mTemplates.clear();
+        mStrings.add(null);
+        mTemplates.add(null);
+    }
+
+    /**
+     * Move to the next message. A truncated record at the end of the stream is ignored.
+     *
+     * @return false, if there are no more messages
+     * @throws IOException if reading fails or the stream is no valid log
+     */
+    public boolean next() throws IOException {
+        try {
+            while (true) {
+                final int type = mIn.read();
+                switch (type) {
+                    case -1:
+                        return false;
+                    case BinaryLogSink.TYPE_RECORD:
+                        readRecord();
+                        return true;
+                    case BinaryLogSink.TYPE_STRING:
+                        final int id = (int) readVarint();
+                        if (id != mStrings.size()) {
+                            throw new IOException("unexpected string id: " + id);
+                        }
+                        mStrings.add(readString());
+                        mTemplates.add(null);
+                        break;
+                    case BinaryLogSink.MAGIC >>> 24:
+                        // header starting a new string table
+                        if ((mIn.readUnsignedByte() << 16 | mIn.readUnsignedShort())
+                                != (BinaryLogSink.MAGIC & 0xffffff)) {
+                            throw new IOException("invalid header");
+                        }
+                        final int version = mIn.readUnsignedByte();
+                        if (version != BinaryLogSink.VERSION) {
+                            throw new IOException("unsupported version: " + version);
+                        }
+                        resetStrings();
+                        break;
+                    default:
+                        throw new IOException("invalid record type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private void readRecord() throws IOException {
+        mTime = mIn.readLong();
+        mThreadId = readVarint();
+        mLevel = mIn.readByte();
+        mTag = readRef();
+        final int msgId = (int) readVarint();
+        if (msgId == 0) {
+            mTemplate = LogTemplate.parse(readString());
+        } else {
+            LogTemplate t = mTemplates.get(msgId);
+            if (t == null) {
+                t = LogTemplate.parse(mStrings.get(msgId));
+                mTemplates.set(msgId, t);
+            }
+            mTemplate = t;
+        }
+        mCount = (int) readVarint();
+        if (mArgs.length < mCount) {
+            mArgs = new Object[mCount];
+        }
+        for (int i = 0; i < mCount; i++) {
+            mArgs[i] = readArg();
+        }
+        mStackTrace = readString();
+    }
+
+    private Object readArg() throws IOException {
+        final int type = mIn.readUnsignedByte();
+        switch (type) {
+            case BinaryLogSink.ARG_NULL:
+                return null;
+            case BinaryLogSink.ARG_INT:
+                return mIn.readInt();
+            case BinaryLogSink.ARG_LONG:
+                return mIn.readLong();
+            case BinaryLogSink.ARG_FLOAT:
+                return mIn.readFloat();
+            case BinaryLogSink.ARG_DOUBLE:
+                return mIn.readDouble();
+            case BinaryLogSink.ARG_BOOLEAN:
+                return mIn.readByte() != 0;
+            case BinaryLogSink.ARG_CHAR:
+                return mIn.readChar();
+            case BinaryLogSink.ARG_STRING:
+                return readString();
+            case BinaryLogSink.ARG_BYTE:
+                return mIn.readByte();
+            case BinaryLogSink.ARG_SHORT:
+                return mIn.readShort();
+            default:
+                throw new IOException("invalid argument type: " + type);
+        }
+    }
+
+    private String readRef() throws IOException {
+        final int id = (int) readVarint();
+        if (id == 0) {
+            return readString();
+        }
+        if (id >= mStrings.size()) {
+            throw new IOException("unknown string id: " + id);
+        }
+        return mStrings.get(id);
+    }
+
+    private long readVarint() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = mIn.readUnsignedByte();
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+
+    private String readString() throws IOException {
+        final int length = (int) readVarint();
+        if (mBuffer.length < length) {
+            mBuffer = new byte[length];
+        }
+        mIn.readFully(mBuffer, 0, length);
+        return Utf8.decode(mBuffer, 0, length);
+    }
+
+    /**
+     * Write all remaining messages in logcat's time format.
+     *
+     * @param out writer
+     * @throws IOException if reading or writing fails
+     */
+    public void copyTo(final Writer out) throws IOException {
+        final SimpleDateFormat format = new SimpleDateFormat(LogFormat.TIME_PATTERN);
+        final Date date = new Date();
+        final StringBuilder sb = new StringBuilder();
+        while (next()) {
+            date.setTime(mTime);
+            sb.setLength(0);
+            LogFormat.appendTime(sb, format.format(date), mLevel, mTag, getMessage());
+            out.append(sb);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return time of the current message in milliseconds since epoch
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return id of the thread which logged the current message
+     */
+    public long getThreadId() {
+        return mThreadId;
+    }
+
+    /**
+     * @return level of the current message
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return tag of the current message
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * Format the current message. The stack trace of a logged throwable is appended.
+     *
+     * @return formatted message
+     */
+    public String getMessage() {
+        final String msg = mCount == 0 ? String.valueOf(mTemplate.getSource())
+                : mTemplate.format(mArgs, mCount);
+        if (mStackTrace.length() == 0) {
+            return msg;
+        }
+        return msg + '\n' + mStackTrace;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * {@link RawLogSink} writing messages in a compact binary format without formatting them.
+ * <p/>
+ * Tags and message templates are written once into a string table and referenced by id
+ * afterwards. Arguments are stored typed: primitives as raw bytes, other objects as their
+ * {@code toString()}. Each record carries a timestamp and the writing thread's id. Formatting
+ * happens when reading the file with {@link BinaryLogDecoder}, e.g. on a desktop:
+ * <pre>
+ * java -cp logg0r.jar de.ub0r.android.logg0r.BinaryLogDecoder app.l0g
+ * </pre>
+ * <p/>
+ * Stream layout: a header (magic, version) resetting the string table, followed by string
+ * definitions (type, id, string) and records (type, time, thread id, level, tag reference,
+ * template reference, argument count, typed arguments, stack trace or empty string). Numbers are
+ * big endian, counts and ids are unsigned varints, strings are a varint length and UTF-8 bytes.
+ * A string reference is an id or 0 followed by an inline string.
+ *
+ * @author flx
+ */
+public class BinaryLogSink implements RawLogSink {
+
+    static final int MAGIC = 0x4c304731;
+    static final int VERSION = 1;
+
+    static final int TYPE_STRING = 1;
+    static final int TYPE_RECORD = 2;
+
+    static final int ARG_NULL = 0;
+    static final int ARG_INT = 1;
+    static final int ARG_LONG = 2;
+    static final int ARG_FLOAT = 3;
+    static final int ARG_DOUBLE = 4;
+    static final int ARG_BOOLEAN = 5;
+    static final int ARG_CHAR = 6;
+    static final int ARG_STRING = 7;
+    static final int ARG_BYTE = 8;
+    static final int ARG_SHORT = 9;
+
+    /**
+     * Maximum number of strings in the string table. Later strings are written inline.
+     */
+    private static final int MAX_STRINGS = 4096;
+
+    /**
+     * Longer strings are never put into the string table.
+     */
+    private static final int MAX_TABLE_STRING = 512;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream mOut;
+    private final HashMap<String, Integer> mStrings = new HashMap<String, Integer>();
+    private ByteBuffer mBuffer = ByteBuffer.allocate(1024);
+    private boolean mFailed = false;
+
+    /**
+     * Create a sink appending to a file.
+     *
+     * @param file file to append to
+     * @throws IOException if the file could not be opened
+     */
+    public BinaryLogSink(final File file) throws IOException {
+        this(new FileOutputStream(file, true));
+    }
+
+    /**
+     * Create a sink writing to a stream.
+     *
+     * @param out stream to write to
+     * @throws IOException if the header could not be written
+     */
+    public BinaryLogSink(final OutputStream out) throws IOException {
+        mOut = new BufferedOutputStream(out, BUFFER_SIZE);
+        mBuffer.putInt(MAGIC);
+        mBuffer.put((byte) VERSION);
+        writeBuffer();
+    }
+
+    @Override
+    public int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        return println(level, tag, msg, null, 0, tr);
+    }
+
+    @Override
+    public synchronized int println(final int level, final String tag, final String msg,
+            final Object[] args, final int count, final Throwable tr) {
+        if (mFailed) {
+            return 0;
+        }
+        try {
+            mBuffer.clear();
+            final int tagId = intern(tag, true);
+            final int msgId = intern(msg, count > 0);
+            if (mBuffer.position() > 0) {
+                writeBuffer();
+            }
+            put(TYPE_RECORD);
+            ensure(8 + 5 + 1);
+            mBuffer.putLong(System.currentTimeMillis());
+            putVarint(Thread.currentThread().getId());
+            mBuffer.put((byte) level);
+            putRef(tagId, tag);
+            putRef(msgId, msg);
+            putVarint(count);
+            for (int i = 0; i < count; i++) {
+                putArg(args[i]);
+            }
+            putString(tr == null ? "" : LogFormat.stackTrace(tr));
+            final int length = mBuffer.position();
+            writeBuffer();
+            if (level >= Log.ERROR) {
+                mOut.flush();
+            }
+            return length;
+        } catch (IOException e) {
+            mFailed = true;
+            return 0;
+        }
+    }
+
+    /**
+     * Write all buffered records.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        mOut.flush();
+    }
+
+    /**
+     * Write all buffered records and close the stream.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void close() throws IOException {
+        mFailed = true;
+        mOut.close();
+    }
+
+    /**
+     * Look up a string in the string table, add it and put its definition into the buffer if
+     * missing.
+     *
+     * @param s      string
+     * @param intern true to add missing strings
+     * @return id or 0 if s should be written inline
+     */
+    private int intern(final String s, final boolean intern) {
+        if (s == null) {
+            return 0;
+        }
+        final Integer id = mStrings.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (!intern || mStrings.size() >= MAX_STRINGS || s.length() > MAX_TABLE_STRING) {
+            return 0;
+        }
+        final int newId = mStrings.size() + 1;
+        mStrings.put(s, newId);
+        put(TYPE_STRING);
+        putVarint(newId);
+        putString(s);
+        return newId;
+    }
+
+    private void putRef(final int id, final String s) {
+        putVarint(id);
+        if (id == 0) {
+            putString(String.valueOf(s));
+        }
+    }
+
+    private void putArg(final Object a) {
+        ensure(9);
+        if (a == null) {
+            put(ARG_NULL);
+        } else if (a instanceof Integer) {
+            put(ARG_INT);
+            mBuffer.putInt((Integer) a);
+        } else if (a instanceof Long) {
+            put(ARG_LONG);
+            mBuffer.putLong((Long) a);
+        } else if (a instanceof Float) {
+            put(ARG_FLOAT);
+            mBuffer.putFloat((Float) a);
+        } else if (a instanceof Double) {
+            put(ARG_DOUBLE);
+            mBuffer.putDouble((Double) a);
+        } else if (a instanceof Boolean) {
+            put(ARG_BOOLEAN);
+            mBuffer.put((byte) ((Boolean) a ? 1 : 0));
+        } else if (a instanceof Character) {
+            put(ARG_CHAR);
+            mBuffer.putChar((Character) a);
+        } else if (a instanceof Byte) {
+            put(ARG_BYTE);
+            mBuffer.put((Byte) a);
+        } else if (a instanceof Short) {
+            put(ARG_SHORT);
+            mBuffer.putShort((Short) a);
+        } else {
+            put(ARG_STRING);
+            putString(a.toString());
+        }
+    }
+
+    private void put(final int b) {
+        ensure(1);
+        mBuffer.put((byte) b);
+    }
+
+    private void putVarint(final long v) {
+        ensure(10);
+        long l = v;
+        while ((l & ~0x7fL) != 0) {
+            mBuffer.put((byte) ((l & 0x7f) | 0x80));
+            l >>>= 7;
+        }
+        mBuffer.put((byte) l);
+    }
+
+    private void putString(final String s) {
+        final int length = Utf8.length(s, Integer.MAX_VALUE);
+        putVarint(length);
+        ensure(length);
+        Utf8.put(mBuffer, s, length);
+    }
+
+    /**
+     * Grow the buffer to hold at least n more bytes.
+     */
+    private void ensure(final int n) {
+        if (mBuffer.remaining() >= n) {
+            return;
+        }
+        final ByteBuffer b = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2,
+                mBuffer.position() + n));
+        mBuffer.flip();
+        b.put(mBuffer);
+        mBuffer = b;
+    }
+
+    private void writeBuffer() throws IOException {
+        mOut.write(mBuffer.array(), 0, mBuffer.position());
+        mBuffer.clear();
+    }
+}
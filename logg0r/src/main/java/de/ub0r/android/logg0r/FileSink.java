@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link LogSink} appending messages to a set of rolling, memory-mapped segment files.
+ * <p/>
+ * Each segment is a fixed-size file mapped into memory. Writing a message is a plain memory copy,
+ * the OS writes dirty pages back to disk, even if the process dies. When a segment is full, the
+ * oldest segment is reused. Use {@link FileSinkReader} to read the messages back.
+ * <p/>
+ * Segment layout: an int magic number, a long generation and the records. Each record is an int
+ * length followed by a long timestamp, a byte level, a short tag length, the tag and the message,
+ * both UTF-8. A zero length marks the end of a segment. The length is written last, so a record
+ * interrupted by process death is never read.
+ *
+ * @author flx
+ */
+public class FileSink implements LogSink {
+
+    static final int MAGIC = 0x6c306731;
+
+    static final int HEADER_SIZE = 4 + 8;
+
+    /**
+     * Size of a record without tag and message.
+     */
+    static final int RECORD_OVERHEAD = 4 + 8 + 1 + 2;
+
+    static final int MAX_TAG_LENGTH = 255;
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final File mDir;
+    private final String mName;
+    private final int mSegmentSize;
+    private final int mSegmentCount;
+
+    private MappedByteBuffer mBuffer;
+    private long mGeneration;
+
+    /**
+     * Create a sink writing to segments {@code <dir>/<name>-<n>.log}. Writing continues after the
+     * last message of a previous run.
+     *
+     * @param dir          directory holding the segments
+     * @param name         base name of the segments
+     * @param segmentSize  size of each segment in bytes
+     * @param segmentCount number of segments to rotate
+     * @throws IOException if segments could not be created
+     */
+    public FileSink(final File dir, final String name, final int segmentSize,
+            final int segmentCount) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("Invalid segment count: " + segmentCount);
+        }
+        mDir = dir;
+        mName = name;
+        mSegmentSize = segmentSize;
+        mSegmentCount = segmentCount;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+        resume();
+    }
+
+    static File segmentFile(final File dir, final String name, final int index) {
+        return new File(dir, name + "-" + index + ".log");
+    }
+
+    /**
+     * Read a segment's generation.
+     *
+     * @param f segment file
+     * @return generation or -1 if f is no valid segment
+     */
+    static long readGeneration(final File f) {
+        if (!f.isFile() || f.length() < HEADER_SIZE) {
+            return -1;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(f, "r");
+            if (raf.readInt() != MAGIC) {
+                return -1;
+            }
+            return raf.readLong();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            close(raf);
+        }
+    }
+
+    static void close(final RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(final File f, final int size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            if (raf.length() != size) {
+                raf.setLength(size);
+            }
+            // the mapping stays valid after closing the file
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Open the latest segment and find the end of its records.
+     */
+    private void resume() throws IOException {
+        int latest = -1;
+        long generation = -1;
+        for (int i = 0; i < mSegmentCount; i++) {
+            final File f = segmentFile(mDir, mName, i);
+            final long g = f.length() == mSegmentSize ? readGeneration(f) : -1;
+            if (g > generation) {
+                generation = g;
+                latest = i;
+            }
+        }
+        if (latest < 0) {
+            open(0);
+            return;
+        }
+        mGeneration = generation;
+        mBuffer = map(segmentFile(mDir, mName, latest), mSegmentSize);
+        int pos = HEADER_SIZE;
+        while (pos + 4 <= mSegmentSize) {
+            final int length = mBuffer.getInt(pos);
+            if (length <= 0 || pos + 4 + length > mSegmentSize) {
+                break;
+            }
+            pos += 4 + length;
+        }
+        mBuffer.position(pos);
+    }
+
+    /**
+     * Start a new segment.
+     *
+     * @param generation generation of the new segment
+     */
+    private void open(final long generation) throws IOException {
+        final int index = (int) (generation % mSegmentCount);
+        mBuffer = null;
+        mGeneration = generation;
+        mBuffer = map(segmentFile(mDir, mName, index), mSegmentSize);
+        mBuffer.clear();
+        mBuffer.putInt(0, 0);
+        mBuffer.putLong(4, generation);
+        mBuffer.putInt(HEADER_SIZE, 0);
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.position(HEADER_SIZE);
+    }
+
+    @Override
+    public synchronized int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final String t = String.valueOf(tag);
+        String m = String.valueOf(msg);
+        if (tr != null) {
+            m = m + '\n' + LogFormat.stackTrace(tr);
+        }
+        final int maxPayload = mSegmentSize - HEADER_SIZE - RECORD_OVERHEAD - 4;
+        final int tagLength = Utf8.length(t, MAX_TAG_LENGTH);
+        final int msgLength = Utf8.length(m, maxPayload - tagLength);
+        final int recordLength = RECORD_OVERHEAD + tagLength + msgLength;
+        try {
+            // leave room for the end marker
+            if (mBuffer == null || mBuffer.remaining() < recordLength + 4) {
+                open(mGeneration + 1);
+            }
+        } catch (IOException e) {
+            mBuffer = null;
+            return 0;
+        }
+        final ByteBuffer buf = mBuffer;
+        final int start = buf.position();
+        buf.position(start + 4);
+        buf.putLong(System.currentTimeMillis());
+        buf.put((byte) level);
+        buf.putShort((short) tagLength);
+        Utf8.put(buf, t, tagLength);
+        Utf8.put(buf, m, msgLength);
+        buf.putInt(buf.position(), 0);
+        buf.putInt(start, recordLength - 4);
+        return recordLength;
+    }
+
+    /**
+     * Ask the OS to write all messages to disk now.
+     */
+    public synchronized void force() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Get the directory holding the segments.
+     *
+     * @return directory
+     */
+    public File getDir() {
+        return mDir;
+    }
+
+    /**
+     * Get the base name of the segments.
+     *
+     * @return base name
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the number of segments rotated.
+     *
+     * @return number of segments
+     */
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Reads messages written by a {@link FileSink}, oldest first.
+ * <p/>
+ * Segments are mapped one at a time, memory usage does not depend on the amount of messages.
+ * <pre>
+ * FileSinkReader r = new FileSinkReader(dir, "app");
+ * while (r.next()) {
+ *     process(r.getTime(), r.getLevel(), r.getTag(), r.getMessage());
+ * }
+ * </pre>
+ *
+ * @author flx
+ */
+public class FileSinkReader {
+
+    private final File[] mSegments;
+    private int mSegment = -1;
+    private MappedByteBuffer mBuffer;
+
+    private long mTime;
+    private int mLevel;
+    private String mTag;
+    private String mMessage;
+
+    /**
+     * Create a reader for all segments {@code <dir>/<name>-<n>.log}.
+     *
+     * @param dir  directory holding the segments
+     * @param name base name of the segments
+     */
+    public FileSinkReader(final File dir, final String name) {
+        final String prefix = name + "-";
+        final File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File d, final String filename) {
+                return filename.startsWith(prefix) && filename.endsWith(".log")
+                        && filename.substring(prefix.length(), filename.length() - 4)
+                        .matches("[0-9]+");
+            }
+        });
+        if (files == null) {
+            mSegments = new File[0];
+            return;
+        }
+        final long[] generations = new long[files.length];
+        int n = 0;
+        for (File f : files) {
+            final long g = FileSink.readGeneration(f);
+            if (g >= 0) {
+                generations[n] = g;
+                files[n] = f;
+                n++;
+            }
+        }
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer lhs, final Integer rhs) {
+                final long l = generations[lhs];
+                final long r = generations[rhs];
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        mSegments = new File[n];
+        for (int i = 0; i < n; i++) {
+            mSegments[i] = files[order[i]];
+        }
+    }
+
+    /**
+     * Create a reader for all segments of a sink.
+     *
+     * @param sink sink
+     */
+    public FileSinkReader(final FileSink sink) {
+        this(sink.getDir(), sink.getName());
+    }
+
+    /**
+     * Move to the next message.
+     *
+     * @return false, if there are no more messages
+     * @throws IOException if a segment could not be read
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (mBuffer != null && readRecord()) {
+                return true;
+            }
+            mBuffer = null;
+            if (++mSegment >= mSegments.length) {
+                return false;
+            }
+            mBuffer = map(mSegments[mSegment]);
+        }
+    }
+
+    private static MappedByteBuffer map(final File f) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            final MappedByteBuffer buf = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buf.position(FileSink.HEADER_SIZE);
+            return buf;
+        } finally {
+            FileSink.close(raf);
+        }
+    }
+
+    private boolean readRecord() {
+        final MappedByteBuffer buf = mBuffer;
+        if (buf.remaining() < 4) {
+            return false;
+        }
+        final int length = buf.getInt();
+        if (length < FileSink.RECORD_OVERHEAD - 4 || length > buf.remaining()) {
+            return false;
+        }
+        final int end = buf.position() + length;
+        mTime = buf.getLong();
+        mLevel = buf.get();
+        final int tagLength = buf.getShort() & 0xffff;
+        if (buf.position() + tagLength > end) {
+            return false;
+        }
+        mTag = Utf8.get(buf, tagLength);
+        mMessage = Utf8.get(buf, end - buf.position());
+        return true;
+    }
+
+    /**
+     * Write all remaining messages in logcat's time format.
+     *
+     * @param out writer
+     * @throws IOException if reading or writing fails
+     */
+    public void copyTo(final Writer out) throws IOException {
+        final SimpleDateFormat format = new SimpleDateFormat(LogFormat.TIME_PATTERN);
+        final Date date = new Date();
+        final StringBuilder sb = new StringBuilder();
+        while (next()) {
+            date.setTime(mTime);
+            sb.setLength(0);
+            LogFormat.appendTime(sb, format.format(date), mLevel, mTag, mMessage);
+            out.append(sb);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return time of the current message in milliseconds since epoch
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return level of the current message
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return tag of the current message
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return current message, including a stack trace if one was logged
+     */
+    public String getMessage() {
+        return mMessage;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LogSink} keeping the most recent messages in a preallocated, off-heap ring buffer.
+ * <p/>
+ * Writers claim space by moving an atomic cursor, no locks are taken. Each record starts with its
+ * absolute position in the stream of all bytes ever written, which is written last. Readers use
+ * it to tell complete records from partially written or overwritten ones. Use
+ * {@link Log#startFlightRecorder(int)} to record all levels and
+ * {@link LogCollector#collectFlightRecorder(android.content.Context, boolean,
+ * LogCollector.Callback)} to dump it.
+ * <p/>
+ * Record layout: long position, int length, long timestamp, byte level, short tag length, tag and
+ * message, both UTF-8.
+ *
+ * @author flx
+ */
+public class FlightRecorder implements LogSink {
+
+    private static final int HEADER_SIZE = 8 + 4;
+
+    private static final int RECORD_OVERHEAD = HEADER_SIZE + 8 + 1 + 2;
+
+    private static final int MIN_CAPACITY = 4096;
+
+    /**
+     * Maximum size of a single record, longer messages are truncated.
+     */
+    private static final int MAX_RECORD = 4096;
+
+    private final ByteBuffer mBuffer;
+    private final int mCapacity;
+    private final int mMaxRecord;
+
+    /**
+     * Absolute position of the next record.
+     */
+    private final AtomicLong mCursor = new AtomicLong();
+
+    /**
+     * Written after each record's payload and read after each record's position. Orders payload
+     * writes before the position marking the record as complete, and reading the position before
+     * reading the payload.
+     */
+    private volatile int mFence;
+
+    private final ThreadLocal<ByteBuffer> mView = new ThreadLocal<ByteBuffer>();
+    private final ThreadLocal<ByteBuffer> mScratch = new ThreadLocal<ByteBuffer>();
+
+    /**
+     * Create a flight recorder.
+     *
+     * @param capacity size of the ring buffer in bytes
+     */
+    public FlightRecorder(final int capacity) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        mCapacity = capacity;
+        mMaxRecord = Math.min(capacity / 4, MAX_RECORD);
+        mBuffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    @Override
+    public int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final ByteBuffer scratch = scratch();
+        final String t = String.valueOf(tag);
+        scratch.putLong(System.currentTimeMillis());
+        scratch.put((byte) level);
+        final int tagLength = Utf8.length(t, FileSink.MAX_TAG_LENGTH);
+        scratch.putShort((short) tagLength);
+        Utf8.put(scratch, t, tagLength);
+        final int max = mMaxRecord - RECORD_OVERHEAD;
+        int n = Utf8.put(scratch, String.valueOf(msg), max - tagLength);
+        if (tr != null && n < max - tagLength) {
+            scratch.put((byte) '\n');
+            n++;
+            Utf8.put(scratch, LogFormat.stackTrace(tr), max - tagLength - n);
+        }
+        scratch.flip();
+        final int length = HEADER_SIZE + scratch.remaining();
+        final long pos = mCursor.getAndAdd(length);
+        putInt(pos + 8, length);
+        put(pos + HEADER_SIZE, scratch);
+        mFence = 0;
+        putLong(pos, pos);
+        return length;
+    }
+
+    private ByteBuffer scratch() {
+        ByteBuffer b = mScratch.get();
+        if (b == null) {
+            b = ByteBuffer.allocate(mMaxRecord);
+            mScratch.set(b);
+        }
+        b.clear();
+        return b;
+    }
+
+    private int index(final long pos) {
+        return (int) (pos % mCapacity);
+    }
+
+    private void put(final long pos, final ByteBuffer src) {
+        ByteBuffer view = mView.get();
+        if (view == null) {
+            view = mBuffer.duplicate();
+            mView.set(view);
+        }
+        final int i = index(pos);
+        final int first = Math.min(src.remaining(), mCapacity - i);
+        final int limit = src.limit();
+        view.clear();
+        view.position(i);
+        src.limit(src.position() + first);
+        view.put(src);
+        src.limit(limit);
+        if (src.hasRemaining()) {
+            view.position(0);
+            view.put(src);
+        }
+    }
+
+    private void putInt(final long pos, final int v) {
+        for (int i = 0; i < 4; i++) {
+            mBuffer.put(index(pos + i), (byte) (v >>> (24 - 8 * i)));
+        }
+    }
+
+    private void putLong(final long pos, final long v) {
+        for (int i = 0; i < 8; i++) {
+            mBuffer.put(index(pos + i), (byte) (v >>> (56 - 8 * i)));
+        }
+    }
+
+    private int getInt(final long pos) {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v = (v << 8) | (mBuffer.get(index(pos + i)) & 0xff);
+        }
+        return v;
+    }
+
+    private long getLong(final long pos) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (mBuffer.get(index(pos + i)) & 0xff);
+        }
+        return v;
+    }
+
+    private void get(final long pos, final byte[] dst, final int length) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = mBuffer.get(index(pos + i));
+        }
+    }
+
+    /**
+     * Check whether a record starting at pos is complete and may still be read.
+     */
+    private boolean valid(final long pos) {
+        final boolean complete = getLong(pos) == pos;
+        return mFence == 0 && complete && mCursor.get() - mCapacity <= pos;
+    }
+
+    /**
+     * Write all recorded messages in logcat's time format, oldest first. Messages written while
+     * dumping may be missing.
+     *
+     * @param out writer
+     * @return number of messages written
+     * @throws IOException if writing fails
+     */
+    public int dump(final Writer out) throws IOException {
+        final long end = mCursor.get();
+        long pos = Math.max(0, end - mCapacity);
+        // skip the partially overwritten oldest record
+        while (pos < end && !valid(pos)) {
+            pos++;
+        }
+        final SimpleDateFormat format = new SimpleDateFormat(LogFormat.TIME_PATTERN);
+        final Date date = new Date();
+        final StringBuilder sb = new StringBuilder();
+        byte[] b = new byte[256];
+        int count = 0;
+        while (pos < end) {
+            if (!valid(pos)) {
+                // still being written or already overwritten
+                break;
+            }
+            final int length = getInt(pos + 8);
+            if (length < RECORD_OVERHEAD || length > mMaxRecord) {
+                break;
+            }
+            final long time = getLong(pos + HEADER_SIZE);
+            final int level = mBuffer.get(index(pos + HEADER_SIZE + 8));
+            final int tagLength = (mBuffer.get(index(pos + HEADER_SIZE + 9)) & 0xff) << 8
+                    | (mBuffer.get(index(pos + HEADER_SIZE + 10)) & 0xff);
+            final int payload = length - RECORD_OVERHEAD;
+            if (tagLength > payload) {
+                break;
+            }
+            if (b.length < payload) {
+                b = new byte[payload];
+            }
+            get(pos + RECORD_OVERHEAD, b, payload);
+            if (!valid(pos)) {
+                break;
+            }
+            final String tag = Utf8.decode(b, 0, tagLength);
+            final String msg = Utf8.decode(b, tagLength, payload - tagLength);
+            date.setTime(time);
+            sb.setLength(0);
+            LogFormat.appendTime(sb, format.format(date), level, tag, msg);
+            out.append(sb);
+            count++;
+            pos += length;
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Get the size of the ring buffer.
+     *
+     * @return size in bytes
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+}
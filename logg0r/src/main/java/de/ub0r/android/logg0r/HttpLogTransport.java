@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Sends batches of logs by HTTP POST.
+ * <p/>
+ * The body is sent as {@code application/x-gzip}, the batch id in the {@link #HEADER_BATCH_ID}
+ * header.
+ *
+ * @author flx
+ */
+public class HttpLogTransport implements LogTransport {
+
+    /**
+     * Header holding the batch id.
+     */
+    public static final String HEADER_BATCH_ID = "X-Logg0r-Batch";
+
+    private static final String CONTENT_TYPE = "application/x-gzip";
+
+    private static final int DEFAULT_TIMEOUT = 30 * 1000;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final URL mUrl;
+    private final int mTimeout;
+
+    /**
+     * Create a transport with a timeout of 30 seconds.
+     *
+     * @param url endpoint
+     */
+    public HttpLogTransport(final URL url) {
+        this(url, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Create a transport.
+     *
+     * @param url     endpoint
+     * @param timeout connect and read timeout in milliseconds
+     */
+    public HttpLogTransport(final URL url, final int timeout) {
+        mUrl = url;
+        mTimeout = timeout;
+    }
+
+    @Override
+    public int send(final String id, final InputStream body, final long length)
+            throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Batch too large: " + length);
+        }
+        final HttpURLConnection c = (HttpURLConnection) mUrl.openConnection();
+        boolean done = false;
+        try {
+            c.setConnectTimeout(mTimeout);
+            c.setReadTimeout(mTimeout);
+            c.setDoOutput(true);
+            c.setRequestMethod("POST");
+            c.setRequestProperty("Content-Type", CONTENT_TYPE);
+            c.setRequestProperty(HEADER_BATCH_ID, id);
+            c.setFixedLengthStreamingMode((int) length);
+            final OutputStream os = c.getOutputStream();
+            try {
+                final byte[] b = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = body.read(b)) >= 0) {
+                    os.write(b, 0, n);
+                }
+            } finally {
+                os.close();
+            }
+            final int status = c.getResponseCode();
+            // drain the response to allow reusing the connection
+            final InputStream is = status >= 400 ? c.getErrorStream() : c.getInputStream();
+            if (is != null) {
+                try {
+                    final byte[] b = new byte[BUFFER_SIZE];
+                    //noinspection StatementWithEmptyBody
+                    while (is.read(b) >= 0) {
+                        // discard
+                    }
+                } finally {
+                    LogSources.close(is);
+                }
+            }
+            done = true;
+            return status;
+        } finally {
+            if (!done) {
+                c.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Device logs of a single process written since the last collection.
+ * <p/>
+ * Tags and levels are filtered by logcat itself, the process is filtered by parsing each line of
+ * {@code logcat -v time}. The checkpoint is the timestamp of the last line collected plus the
+ * number of lines collected with exactly that timestamp, as several lines may share it. Logcat
+ * timestamps have no year, a checkpoint in December is considered older than lines in January.
+ *
+ * @author flx
+ */
+final class IncrementalLogcat implements LogSources.Source {
+
+    /**
+     * Length of a logcat timestamp, "MM-dd HH:mm:ss.SSS".
+     */
+    private static final int TIME_LENGTH = 18;
+
+    private final LogcatLauncher mLauncher;
+    private final int mPid;
+    private final String[] mTags;
+    private final int mMinLevel;
+
+    private final String mSince;
+    private final int mSinceCount;
+
+    private String mLast;
+    private int mLastCount;
+
+    /**
+     * Create a source.
+     *
+     * @param launcher   used to start logcat
+     * @param pid        process to collect logs of
+     * @param tags       tags to collect, null for all tags
+     * @param minLevel   lowest level to collect
+     * @param since      timestamp of the last line collected before, null to collect all
+     * @param sinceCount number of lines collected before with exactly that timestamp
+     */
+    IncrementalLogcat(final LogcatLauncher launcher, final int pid, final String[] tags,
+            final int minLevel, final String since, final int sinceCount) {
+        mLauncher = launcher;
+        mPid = pid;
+        mTags = tags;
+        mMinLevel = minLevel;
+        mSince = since;
+        mSinceCount = sinceCount;
+        mLast = since;
+        mLastCount = sinceCount;
+    }
+
+    /**
+     * @return timestamp of the last line collected
+     */
+    String getLast() {
+        return mLast;
+    }
+
+    /**
+     * @return number of lines collected with exactly the last timestamp
+     */
+    int getLastCount() {
+        return mLastCount;
+    }
+
+    /**
+     * Build the logcat command line, filtering tags and levels.
+     *
+     * @return command and arguments
+     */
+    String[] command() {
+        final List<String> cmd = new ArrayList<String>();
+        cmd.add("logcat");
+        cmd.add("-d");
+        cmd.add("-v");
+        cmd.add("time");
+        // logcat calls ASSERT 'F' in filters
+        final char level = mMinLevel >= Log.ASSERT ? 'F' : LogFormat.levelChar(mMinLevel);
+        if (mTags == null) {
+            cmd.add("*:" + level);
+        } else {
+            for (String tag : mTags) {
+                cmd.add(tag + ":" + level);
+            }
+            cmd.add("*:S");
+        }
+        return cmd.toArray(new String[cmd.size()]);
+    }
+
+    @Override
+    public void writeTo(final OutputStream os, final LogSources.Progress progress)
+            throws IOException {
+        final InputStream is = mLauncher.launch(command());
+        try {
+            final BufferedReader r = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+            final Writer w = new OutputStreamWriter(os, "UTF-8");
+            long read = 0;
+            int skip = mSinceCount;
+            String line;
+            while ((line = r.readLine()) != null) {
+                read += line.length() + 1;
+                if (progress != null) {
+                    progress.onProgress(read);
+                }
+                if (line.length() < TIME_LENGTH || pid(line) != mPid) {
+                    continue;
+                }
+                final String time = line.substring(0, TIME_LENGTH);
+                if (mSince != null) {
+                    final int c = compare(time, mSince);
+                    if (c < 0) {
+                        continue;
+                    }
+                    if (c == 0 && skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                }
+                if (time.equals(mLast)) {
+                    mLastCount++;
+                } else {
+                    mLast = time;
+                    mLastCount = 1;
+                }
+                w.write(line);
+                w.write('\n');
+            }
+            w.flush();
+        } finally {
+            LogSources.close(is);
+        }
+        LogSources.writeStats(os);
+    }
+
+    /**
+     * Get the process id of a line like "10-18 12:34:56.789 D/Tag( 1234): message".
+     *
+     * @param line line
+     * @return process id or -1
+     */
+    static int pid(final String line) {
+        final int end = line.indexOf("): ", TIME_LENGTH);
+        if (end < 0) {
+            return -1;
+        }
+        final int start = line.lastIndexOf('(', end);
+        if (start < 0) {
+            return -1;
+        }
+        int pid = 0;
+        boolean digits = false;
+        for (int i = start + 1; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                pid = pid * 10 + (c - '0');
+                digits = true;
+            } else if (c != ' ') {
+                return -1;
+            }
+        }
+        return digits ? pid : -1;
+    }
+
+    /**
+     * Compare two logcat timestamps, taking a turn of the year into account.
+     */
+    static int compare(final String lhs, final String rhs) {
+        if (lhs.startsWith("01-") && rhs.startsWith("12-")) {
+            return 1;
+        }
+        if (lhs.startsWith("12-") && rhs.startsWith("01-")) {
+            return -1;
+        }
+        return lhs.compareTo(rhs);
+    }
+}
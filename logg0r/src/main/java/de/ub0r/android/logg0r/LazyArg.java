@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+/**
+ * A log argument evaluated only if its message is going to be logged.
+ * <p/>
+ * {@link Log} calls {@link #value()} after the level check passed, at most once per message, no
+ * matter how many sinks write it. Use it for arguments with expensive string representations:
+ * <pre>
+ * Log.d(TAG, "state: %s", new LazyArg() {
+ *     public Object value() {
+ *         return mState.describe();
+ *     }
+ * });
+ * </pre>
+ * {@link LogArgs} has implementations for common expensive renderings.
+ *
+ * @author flx
+ */
+public interface LazyArg {
+
+    /**
+     * Evaluate the argument. With asynchronous logging, this is called on the logging thread.
+     *
+     * @return the value to format into the message
+     */
+    Object value();
+}
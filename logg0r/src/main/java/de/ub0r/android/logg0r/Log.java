@@ -17,10 +17,6 @@
 
 package de.ub0r.android.logg0r;
 
-import android.os.Build;
-
-import java.util.IllegalFormatException;
-
 /**
  * Mirror android.util.Log for easy removal with proguard.
  *
@@ -59,6 +55,51 @@ public class Log {
      */
     public static final int ASSERT = android.util.Log.ASSERT;
 
+    /**
+     * Overflow policy for {@link #startAsync(int, int)}: drop new records if the buffer is full.
+     */
+    public static final int OVERFLOW_DROP_NEWEST = 0;
+
+    /**
+     * Overflow policy for {@link #startAsync(int, int)}: drop the oldest buffered record if the
+     * buffer is full.
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+
+    /**
+     * Overflow policy for {@link #startAsync(int, int)}: block the caller until there is room in
+     * the buffer.
+     */
+    public static final int OVERFLOW_BLOCK = 2;
+
+    private static volatile AsyncLog sAsync = null;
+
+    private static volatile FlightRecorder sFlightRecorder = null;
+
+    private static volatile LogStatsRecorder sStats = null;
+
+    private static volatile ThrowableCache sThrowableCache = null;
+
+    /**
+     * Default interval between two summaries of messages suppressed by rate limiting.
+     */
+    private static final long DEFAULT_RATE_LIMIT_SUMMARY_INTERVAL = 10000L;
+
+    /**
+     * Rate limiting configuration, guarded by Log.class.
+     */
+    private static LogRateLimiter sRateLimiterConfig = new LogRateLimiter(false,
+            DEFAULT_RATE_LIMIT_SUMMARY_INTERVAL);
+
+    /**
+     * Active rate limiter or null if no limits are set.
+     */
+    private static volatile LogRateLimiter sRateLimiter = null;
+
+    private static volatile LogCoalescer sCoalescer = null;
+
+    private static volatile LogSinks sSinks = LogSinks.of(new LogcatSink(), VERBOSE);
+
     private Log() {
         // no instances
     }
@@ -87,269 +128,1839 @@ public class Log {
     }
 
     /**
-     * Send a {@link #DEBUG} log message.
+     * Send a {@link #VERBOSE} log message.
      *
-     * @param tag Used to identify the source of a log message.  It usually identifies the class or
-     *            activity where the log call occurs.
-     * @param msg The message you would like logged.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int d(final String tag, final String msg) {
-        return log(DEBUG, tag, msg, (Throwable) null);
+    public static int v(final String tag, final String msg, final Object arg0) {
+        return log(VERBOSE, tag, msg, arg0);
     }
 
     /**
-     * Send a {@link #DEBUG} log message.
+     * Send a {@link #VERBOSE} log message.
      *
      * @param tag  Used to identify the source of a log message.  It usually identifies the class or
      *             activity where the log call occurs.
      * @param msg  The message you would like logged.
-     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int d(final String tag, final String msg, final Object... args) {
-        return log(DEBUG, tag, msg, args);
+    public static int v(final String tag, final String msg, final Object arg0, final Object arg1) {
+        return log(VERBOSE, tag, msg, arg0, arg1);
     }
 
     /**
-     * Send an {@link #INFO} log message.
+     * Send a {@link #VERBOSE} log message.
      *
-     * @param tag Used to identify the source of a log message.  It usually identifies the class or
-     *            activity where the log call occurs.
-     * @param msg The message you would like logged.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int i(final String tag, final String msg) {
-        return log(INFO, tag, msg, (Throwable) null);
+    public static int v(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(VERBOSE, tag, msg, arg0, arg1, arg2);
     }
 
     /**
-     * Send an {@link #INFO} log message.
+     * Send a {@link #VERBOSE} log message.
      *
      * @param tag  Used to identify the source of a log message.  It usually identifies the class or
      *             activity where the log call occurs.
      * @param msg  The message you would like logged.
-     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int i(final String tag, final String msg, final Object... args) {
-        return log(INFO, tag, msg, args);
+    public static int v(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(VERBOSE, tag, msg, arg0, arg1, arg2, arg3);
     }
 
     /**
-     * Send a {@link #WARN} log message.
+     * Send a {@link #VERBOSE} log message.
      *
-     * @param tag Used to identify the source of a log message.  It usually identifies the class or
-     *            activity where the log call occurs.
-     * @param msg The message you would like logged.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
      */
-    public static int w(final String tag, final String msg) {
-        return log(WARN, tag, msg, (Throwable) null);
+    public static int v(final String tag, final String msg, final int arg0) {
+        return log(VERBOSE, tag, msg, arg0);
     }
 
     /**
-     * Send a {@link #WARN} log message.
+     * Send a {@link #VERBOSE} log message.
      *
      * @param tag  Used to identify the source of a log message.  It usually identifies the class or
      *             activity where the log call occurs.
      * @param msg  The message you would like logged.
-     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     * @param arg0 Argument for msg's String formatting.
      */
-    public static int w(final String tag, final String msg, final Object... args) {
-        return log(WARN, tag, msg, args);
+    public static int v(final String tag, final String msg, final long arg0) {
+        return log(VERBOSE, tag, msg, arg0);
     }
 
     /**
-     * Send an {@link #ERROR} log message.
+     * Send a {@link #VERBOSE} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int v(final String tag, final String msg, final float arg0) {
+        return log(VERBOSE, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int v(final String tag, final String msg, final double arg0) {
+        return log(VERBOSE, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int v(final String tag, final String msg, final boolean arg0) {
+        return log(VERBOSE, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int v(final String tag, final String msg, final char arg0) {
+        return log(VERBOSE, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message.
      *
      * @param tag Used to identify the source of a log message.  It usually identifies the class or
      *            activity where the log call occurs.
      * @param msg The message you would like logged.
      */
-    public static int e(final String tag, final String msg) {
-        return log(ERROR, tag, msg, (Throwable) null);
+    public static int d(final String tag, final String msg) {
+        return log(DEBUG, tag, msg, (Throwable) null);
     }
 
     /**
-     * Send an {@link #ERROR} log message.
+     * Send a {@link #DEBUG} log message.
      *
      * @param tag  Used to identify the source of a log message.  It usually identifies the class or
      *             activity where the log call occurs.
      * @param msg  The message you would like logged.
      * @param args Arguments for msg's String formatting. Last object may be a throwable.
      */
-    public static int e(final String tag, String msg, final Object... args) {
-        return log(ERROR, tag, msg, args);
+    public static int d(final String tag, final String msg, final Object... args) {
+        return log(DEBUG, tag, msg, args);
     }
 
     /**
-     * What a Terrible Failure: Report a condition that should never happen. The error will always
-     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
-     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
-     * immediately with an error dialog.
+     * Send a {@link #DEBUG} log message.
      *
-     * @param tag Used to identify the source of a log message.
-     * @param msg The message you would like logged.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int wtf(final String tag, final String msg) {
-        return log(ASSERT, tag, msg, (Throwable) null);
+    public static int d(final String tag, final String msg, final Object arg0) {
+        return log(DEBUG, tag, msg, arg0);
     }
 
     /**
-     * What a Terrible Failure: Report a condition that should never happen. The error will always
-     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
-     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
-     * immediately with an error dialog.
+     * Send a {@link #DEBUG} log message.
      *
-     * @param tag  Used to identify the source of a log message.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
      * @param msg  The message you would like logged.
-     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static int wtf(final String tag, final String msg, final Object... args) {
-        return log(ASSERT, tag, msg, args);
+    public static int d(final String tag, final String msg, final Object arg0, final Object arg1) {
+        return log(DEBUG, tag, msg, arg0, arg1);
     }
 
     /**
-     * Checks to see whether or not a log for the specified tag is loggable at the specified level.
+     * Send a {@link #DEBUG} log message.
      *
-     * The default level of any tag is set to INFO. This means that any level above and including
-     * INFO will be logged. Before you make any calls to a logging method you should check to see if
-     * your tag should be logged. You can change the default level by setting a system property:
-     * 'setprop log.tag.&lt;YOUR_LOG_TAG> &lt;LEVEL>' Where level is either VERBOSE, DEBUG, INFO,
-     * WARN, ERROR, ASSERT, or SUPPRESS. SUPPRESS will turn off all logging for your tag. You can
-     * also create a local.prop file that with the following in it: 'log.tag.&lt;YOUR_LOG_TAG>=&lt;LEVEL>'
-     * and place that in /data/local.prop.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int d(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(DEBUG, tag, msg, arg0, arg1, arg2);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message.
      *
-     * @param tag   The tag to check.
-     * @param level The level to check.
-     * @return Whether or not that this is allowed to be logged.
-     * @throws IllegalArgumentException is thrown if the tag.length() > 23.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
      */
-    public static boolean isLoggable(final String tag, int level) {
-        return android.util.Log.isLoggable(tag, level);
+    public static int d(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(DEBUG, tag, msg, arg0, arg1, arg2, arg3);
     }
 
     /**
-     * Send a log message.
+     * Send a {@link #DEBUG} log message.
      *
-     * @param level Logging level
-     * @param tag   Used to identify the source of a log message.  It usually identifies the class
-     *              or activity where the log call occurs.
-     * @param msg   The message you would like logged.
-     * @param args  Arguments for msg's String formatting. Last object may be a throwable.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
      */
-    private static int log(final int level, final String tag, final String msg,
-            final Object[] args) {
-        if (args == null || args.length == 0) {
-            return log(level, tag, msg, (Throwable) null);
-        }
+    public static int d(final String tag, final String msg, final int arg0) {
+        return log(DEBUG, tag, msg, arg0);
+    }
 
-        // grep Throwable from args
-        int l = args.length;
-        Throwable tr;
-        Object[] fargs;
-        if (args[l - 1] instanceof Throwable) {
-            l -= 1;
-            tr = (Throwable) args[l];
-            fargs = new Object[l];
-            System.arraycopy(args, 0, fargs, 0, l);
-        } else {
-            tr = null;
-            fargs = args;
-        }
+    /**
+     * Send a {@link #DEBUG} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int d(final String tag, final String msg, final long arg0) {
+        return log(DEBUG, tag, msg, arg0);
+    }
 
-        // it's only Throwable, no formatting involved
-        if (l == 0) {
-            return log(level, tag, msg, tr);
-        }
+    /**
+     * Send a {@link #DEBUG} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int d(final String tag, final String msg, final float arg0) {
+        return log(DEBUG, tag, msg, arg0);
+    }
 
-        // formatted msg
-        return log(level, tag, msg, fargs, tr);
+    /**
+     * Send a {@link #DEBUG} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int d(final String tag, final String msg, final double arg0) {
+        return log(DEBUG, tag, msg, arg0);
     }
 
     /**
-     * Send a formatted log message.
+     * Send a {@link #DEBUG} log message.
      *
-     * @param level Logging level
-     * @param tag   Used to identify the source of a log message.  It usually identifies the class
-     *              or activity where the log call occurs.
-     * @param msg   The message you would like logged.
-     * @param args  Arguments for msg's String formatting.
-     * @param tr    A Throwable for printing stack traces.
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
      */
-    private static int log(final int level, final String tag, final String msg,
-            final Object[] args, final Throwable tr) {
-        // try String.format first
-        if (msg.contains("%")) {
-            try {
-                return log(level, tag, String.format(msg, args), tr);
-            } catch (IllegalFormatException e) {
-                // failed
-            }
-        }
+    public static int d(final String tag, final String msg, final boolean arg0) {
+        return log(DEBUG, tag, msg, arg0);
+    }
 
-        // just concatenate Objects.toString()
-        StringBuilder sb = new StringBuilder(msg);
-        for (Object a : args) {
-            sb.append(a);
-        }
-        return log(level, tag, sb.toString(), tr);
+    /**
+     * Send a {@link #DEBUG} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int d(final String tag, final String msg, final char arg0) {
+        return log(DEBUG, tag, msg, arg0);
     }
 
     /**
-     * Send a plain log message.
+     * Send an {@link #INFO} log message.
      *
-     * @param level Logging level
-     * @param tag   Used to identify the source of a log message.  It usually identifies the class
-     *              or activity where the log call occurs.
-     * @param msg   The message you would like logged.
-     * @param tr    A Throwable for printing stack traces.
+     * @param tag Used to identify the source of a log message.  It usually identifies the class or
+     *            activity where the log call occurs.
+     * @param msg The message you would like logged.
      */
-    private static int log(final int level, final String tag, final String msg,
-            final Throwable tr) {
-        switch (level) {
-            case VERBOSE:
-                if (tr == null) {
-                    return android.util.Log.v(tag, msg);
-                } else {
-                    return android.util.Log.v(tag, msg, tr);
-                }
-            case DEBUG:
-                if (tr == null) {
-                    return android.util.Log.d(tag, msg);
-                } else {
-                    return android.util.Log.d(tag, msg, tr);
-                }
-            case INFO:
-                if (tr == null) {
-                    return android.util.Log.i(tag, msg);
-                } else {
-                    return android.util.Log.i(tag, msg, tr);
-                }
-            case WARN:
-                if (tr == null) {
-                    return android.util.Log.w(tag, msg);
-                } else {
-                    return android.util.Log.w(tag, msg, tr);
-                }
-            case ERROR:
-                if (tr == null) {
-                    return android.util.Log.e(tag, msg);
-                } else {
-                    return android.util.Log.e(tag, msg, tr);
-                }
-            case ASSERT:
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
-                    if (tr == null) {
-                        return android.util.Log.wtf(tag, msg);
-                    } else {
-                        return android.util.Log.wtf(tag, msg, tr);
-                    }
-                } else {
-                    if (tr == null) {
-                        return android.util.Log.e(tag, msg);
-                    } else {
-                        return android.util.Log.e(tag, msg, tr);
-                    }
-                }
-            default:
-                throw new IllegalArgumentException("Invalid log level: " + level);
+    public static int i(final String tag, final String msg) {
+        return log(INFO, tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    public static int i(final String tag, final String msg, final Object... args) {
+        return log(INFO, tag, msg, args);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int i(final String tag, final String msg, final Object arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int i(final String tag, final String msg, final Object arg0, final Object arg1) {
+        return log(INFO, tag, msg, arg0, arg1);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int i(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(INFO, tag, msg, arg0, arg1, arg2);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int i(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(INFO, tag, msg, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final int arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final long arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final float arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final double arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final boolean arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #INFO} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int i(final String tag, final String msg, final char arg0) {
+        return log(INFO, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag Used to identify the source of a log message.  It usually identifies the class or
+     *            activity where the log call occurs.
+     * @param msg The message you would like logged.
+     */
+    public static int w(final String tag, final String msg) {
+        return log(WARN, tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    public static int w(final String tag, final String msg, final Object... args) {
+        return log(WARN, tag, msg, args);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int w(final String tag, final String msg, final Object arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int w(final String tag, final String msg, final Object arg0, final Object arg1) {
+        return log(WARN, tag, msg, arg0, arg1);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int w(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(WARN, tag, msg, arg0, arg1, arg2);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int w(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(WARN, tag, msg, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final int arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final long arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final float arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final double arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final boolean arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send a {@link #WARN} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int w(final String tag, final String msg, final char arg0) {
+        return log(WARN, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag Used to identify the source of a log message.  It usually identifies the class or
+     *            activity where the log call occurs.
+     * @param msg The message you would like logged.
+     */
+    public static int e(final String tag, final String msg) {
+        return log(ERROR, tag, msg, (Throwable) null);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    public static int e(final String tag, String msg, final Object... args) {
+        return log(ERROR, tag, msg, args);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int e(final String tag, final String msg, final Object arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int e(final String tag, final String msg, final Object arg0, final Object arg1) {
+        return log(ERROR, tag, msg, arg0, arg1);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int e(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(ERROR, tag, msg, arg0, arg1, arg2);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int e(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(ERROR, tag, msg, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final int arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final long arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final float arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final double arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final boolean arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message.
+     *
+     * @param tag  Used to identify the source of a log message.  It usually identifies the class or
+     *             activity where the log call occurs.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int e(final String tag, final String msg, final char arg0) {
+        return log(ERROR, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag Used to identify the source of a log message.
+     * @param msg The message you would like logged.
+     */
+    public static int wtf(final String tag, final String msg) {
+        return log(ASSERT, tag, msg, (Throwable) null);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param args Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    public static int wtf(final String tag, final String msg, final Object... args) {
+        return log(ASSERT, tag, msg, args);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int wtf(final String tag, final String msg, final Object arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int wtf(final String tag, final String msg, final Object arg0,
+            final Object arg1) {
+        return log(ASSERT, tag, msg, arg0, arg1);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int wtf(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2) {
+        return log(ASSERT, tag, msg, arg0, arg1, arg2);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     * @param arg1 Argument for msg's String formatting.
+     * @param arg2 Argument for msg's String formatting.
+     * @param arg3 Argument for msg's String formatting. Last object may be a throwable.
+     */
+    public static int wtf(final String tag, final String msg, final Object arg0, final Object arg1,
+            final Object arg2, final Object arg3) {
+        return log(ASSERT, tag, msg, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final int arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final long arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final float arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final double arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final boolean arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * What a Terrible Failure: Report a condition that should never happen. The error will always
+     * be logged at level ASSERT with the call stack. Depending on system configuration, a report
+     * may be added to the {@link android.os.DropBoxManager} and/or the process may be terminated
+     * immediately with an error dialog.
+     *
+     * @param tag  Used to identify the source of a log message.
+     * @param msg  The message you would like logged.
+     * @param arg0 Argument for msg's String formatting.
+     */
+    public static int wtf(final String tag, final String msg, final char arg0) {
+        return log(ASSERT, tag, msg, arg0);
+    }
+
+    /**
+     * Checks to see whether or not a log for the specified tag is loggable at the specified level.
+     *
+     * The default level of any tag is set to INFO. This means that any level above and including
+     * INFO will be logged. Before you make any calls to a logging method you should check to see if
+     * your tag should be logged. You can change the default level by setting a system property:
+     * 'setprop log.tag.&lt;YOUR_LOG_TAG> &lt;LEVEL>' Where level is either VERBOSE, DEBUG, INFO,
+     * WARN, ERROR, ASSERT, or SUPPRESS. SUPPRESS will turn off all logging for your tag. You can
+     * also create a local.prop file that with the following in it: 'log.tag.&lt;YOUR_LOG_TAG>=&lt;LEVEL>'
+     * and place that in /data/local.prop.
+     *
+     * @param tag   The tag to check.
+     * @param level The level to check.
+     * @return Whether or not that this is allowed to be logged.
+     * @throws IllegalArgumentException is thrown if the tag.length() > 23.
+     */
+    public static boolean isLoggable(final String tag, int level) {
+        return android.util.Log.isLoggable(tag, level);
+    }
+
+    /**
+     * Checks whether a message for the specified tag at the specified level would be logged by
+     * this class. Unlike {@link #isLoggable(String, int)} this takes levels set by
+     * {@link #setLevel(String, int)} and {@link #setMinLevel(int)} into account and does not hit
+     * system properties more than once per tag.
+     *
+     * @param tag   The tag to check.
+     * @param level The level to check.
+     * @return Whether or not that this would be logged.
+     */
+    public static boolean isEnabled(final String tag, final int level) {
+        return LogLevels.isEnabled(tag, level);
+    }
+
+    /**
+     * Checks whether a message for the specified tag at the specified level would be logged, like
+     * {@link #isEnabled(String, int)}. A message rejected here is counted as dropped in
+     * {@link #getStats()}. Used by code generated for {@link LogMessage}s before building the
+     * message.
+     *
+     * @param tag   The tag to check.
+     * @param level The level to check.
+     * @return Whether or not that this would be logged.
+     */
+    public static boolean shouldLog(final String tag, final int level) {
+        return enabled(level, tag);
+    }
+
+    /**
+     * Start a log message with structured key/value fields:
+     * <pre>
+     * Log.at(Log.DEBUG, TAG).kv("user", id).kv("ms", elapsed).msg("sync done").log();
+     * </pre>
+     * If the level is disabled for the tag, a shared event ignoring all calls is returned.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @return Event to add fields and message to.
+     */
+    public static LogEvent at(final int level, final String tag) {
+        if (!enabled(level, tag)) {
+            return LogEvent.NOOP;
+        }
+        return LogEvent.obtain(level, tag);
+    }
+
+    /**
+     * Set the minimum level for a single tag. Messages below this level are dropped before any
+     * formatting takes place.
+     *
+     * @param tag   The tag to configure.
+     * @param level The minimum level, e.g. {@link #INFO}.
+     */
+    public static void setLevel(final String tag, final int level) {
+        LogLevels.setLevel(tag, level);
+    }
+
+    /**
+     * Remove the minimum level set by {@link #setLevel(String, int)} for a single tag.
+     *
+     * @param tag The tag to reset.
+     */
+    public static void clearLevel(final String tag) {
+        LogLevels.clearLevel(tag);
+    }
+
+    /**
+     * Set the minimum level for all tags without a level of their own. Default is
+     * {@link #VERBOSE}, i.e. nothing is dropped.
+     *
+     * @param level The minimum level, e.g. {@link #INFO}.
+     */
+    public static void setMinLevel(final int level) {
+        LogLevels.setMinLevel(level);
+    }
+
+    /**
+     * Get the minimum level for all tags without a level of their own.
+     *
+     * @return The minimum level.
+     */
+    public static int getMinLevel() {
+        return LogLevels.getMinLevel();
+    }
+
+    /**
+     * Drop messages {@link #isLoggable(String, int)} does not allow. The result is resolved once
+     * per tag, call {@link #invalidateLevels()} after changing system properties.
+     *
+     * @param useLoggable true to honour 'log.tag.&lt;YOUR_LOG_TAG>' system properties
+     */
+    public static void setUseLoggable(final boolean useLoggable) {
+        LogLevels.setUseLoggable(useLoggable);
+    }
+
+    /**
+     * Drop all cached per-tag levels. They are resolved again on next use.
+     */
+    public static void invalidateLevels() {
+        LogLevels.invalidate();
+    }
+
+    /**
+     * Limit the number of messages per tag at a level. Messages above the limit are dropped
+     * before any formatting takes place. The number of dropped messages is logged periodically.
+     *
+     * @param level     The level to limit, e.g. {@link #WARN}.
+     * @param perSecond Number of messages allowed per second, 0 to remove the limit.
+     * @param burst     Number of messages allowed at once.
+     */
+    public static synchronized void setRateLimit(final int level, final int perSecond,
+            final int burst) {
+        setRateLimiter(sRateLimiterConfig.withLimit(level, perSecond, burst));
+    }
+
+    /**
+     * Configure rate limiting set by {@link #setRateLimit(int, int, int)}. Default is to limit per
+     * tag and summarize dropped messages every 10 seconds. Changing the configuration resets all
+     * limits' state.
+     *
+     * @param perTemplate     Limit per tag and message instead of per tag only.
+     * @param summaryInterval Milliseconds between two summaries of dropped messages.
+     */
+    public static synchronized void setRateLimitConfig(final boolean perTemplate,
+            final long summaryInterval) {
+        setRateLimiter(sRateLimiterConfig.withConfig(perTemplate, summaryInterval));
+    }
+
+    /**
+     * Remove all limits set by {@link #setRateLimit(int, int, int)}.
+     */
+    public static synchronized void clearRateLimits() {
+        setRateLimiter(new LogRateLimiter(sRateLimiterConfig.isPerTemplate(),
+                sRateLimiterConfig.getSummaryInterval()));
+    }
+
+    private static void setRateLimiter(final LogRateLimiter limiter) {
+        final LogRateLimiter old = sRateLimiter;
+        sRateLimiterConfig = limiter;
+        if (limiter.isEmpty()) {
+            sRateLimiter = null;
+        } else {
+            limiter.start();
+            sRateLimiter = limiter;
+        }
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Hold back exact repeats of a tag's previous message. Repeats are compared by level, message
+     * and their arguments before any formatting takes place. A single "last message repeated N
+     * times" line is logged when a different message arrives, the window expires or on
+     * {@link #flush()}.
+     *
+     * @param window Milliseconds after which held back repeats are reported, 0 to turn off.
+     */
+    public static synchronized void setCoalesceRepeats(final long window) {
+        final LogCoalescer old = sCoalescer;
+        sCoalescer = window > 0 ? new LogCoalescer(window) : null;
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Send all messages to a single sink, replacing all registered sinks. Default is a
+     * {@link LogcatSink}.
+     *
+     * @param sink The sink to write to.
+     */
+    public static synchronized void setSink(final LogSink sink) {
+        setSinks(LogSinks.of(sink, VERBOSE));
+    }
+
+    /**
+     * Register an additional sink. Messages below the minimum level of all sinks are dropped
+     * before any formatting takes place.
+     *
+     * @param sink     The sink to write to.
+     * @param minLevel The minimum level passed to this sink, e.g. {@link #INFO}.
+     */
+    public static synchronized void addSink(final LogSink sink, final int minLevel) {
+        setSinks(sSinks.plus(sink, minLevel));
+    }
+
+    /**
+     * Unregister a sink.
+     *
+     * @param sink The sink to remove.
+     */
+    public static synchronized void removeSink(final LogSink sink) {
+        setSinks(sSinks.minus(sink));
+    }
+
+    private static void setSinks(final LogSinks sinks) {
+        sSinks = sinks;
+        LogLevels.setSinkLevel(sinks.minLevel);
+    }
+
+    /**
+     * Start keeping the most recent messages of all levels in memory. Messages below the level of
+     * other sinks are recorded, too. Restrict other sinks with {@link #addSink(LogSink, int)} to
+     * keep them out of logcat. Use {@link LogCollector} to dump the recorded messages.
+     *
+     * @param capacity Size of the off-heap ring buffer in bytes.
+     * @return The flight recorder.
+     */
+    public static synchronized FlightRecorder startFlightRecorder(final int capacity) {
+        stopFlightRecorder();
+        final FlightRecorder recorder = new FlightRecorder(capacity);
+        addSink(recorder, VERBOSE);
+        sFlightRecorder = recorder;
+        return recorder;
+    }
+
+    /**
+     * Stop recording messages in memory. All recorded messages are dropped.
+     */
+    public static synchronized void stopFlightRecorder() {
+        final FlightRecorder recorder = sFlightRecorder;
+        sFlightRecorder = null;
+        if (recorder != null) {
+            removeSink(recorder);
+        }
+    }
+
+    /**
+     * Get the flight recorder started by {@link #startFlightRecorder(int)}.
+     *
+     * @return The flight recorder or null.
+     */
+    public static FlightRecorder getFlightRecorder() {
+        return sFlightRecorder;
+    }
+
+    /**
+     * Start counting records, characters, throwables, format failures and dropped calls, per level
+     * and per tag. Calling this while counting restarts all counters.
+     *
+     * @param latencySampleInterval Time every n-th write to the sinks, 0 to not time them.
+     */
+    public static synchronized void startStats(final int latencySampleInterval) {
+        sStats = new LogStatsRecorder(latencySampleInterval);
+    }
+
+    /**
+     * Stop counting.
+     */
+    public static synchronized void stopStats() {
+        sStats = null;
+    }
+
+    /**
+     * Get the current state of the counters started by {@link #startStats(int)}.
+     *
+     * @return Snapshot of all counters or null.
+     */
+    public static LogStats getStats() {
+        final LogStatsRecorder stats = sStats;
+        return stats == null ? null : stats.snapshot();
+    }
+
+    /**
+     * Render repeated stack traces only once. The first occurrence of a throwable is logged in
+     * full, with its message marked as "[trace #17]". Later occurrences of the same throwable,
+     * identified by class, message and top stack frames, are logged as a single line like
+     * "java.io.IOException: timeout (same trace as #17, seen 213 times)".
+     *
+     * @param capacity Number of distinct throwables to remember, 0 to turn off.
+     */
+    public static synchronized void setThrowableCache(final int capacity) {
+        sThrowableCache = capacity > 0 ? new ThrowableCache(capacity) : null;
+    }
+
+    /**
+     * Get the fraction of logged throwables found in the cache set up by
+     * {@link #setThrowableCache(int)}.
+     *
+     * @return Hit rate between 0 and 1, 0 if the cache is off.
+     */
+    public static double getThrowableCacheHitRate() {
+        final ThrowableCache cache = sThrowableCache;
+        return cache == null ? 0d : cache.getHitRate();
+    }
+
+    /**
+     * Switch to asynchronous logging. Messages below {@link #ERROR} are queued and formatted and
+     * written by a background thread. {@link #ERROR} and {@link #ASSERT} messages flush the queue
+     * and are written synchronously. Calling this while asynchronous logging is active restarts
+     * it with the new configuration.
+     *
+     * @param capacity       Number of messages to buffer.
+     * @param overflowPolicy What to do if the buffer is full: {@link #OVERFLOW_DROP_NEWEST},
+     *                       {@link #OVERFLOW_DROP_OLDEST} or {@link #OVERFLOW_BLOCK}.
+     */
+    public static synchronized void startAsync(final int capacity, final int overflowPolicy) {
+        final AsyncLog async = new AsyncLog(capacity, overflowPolicy);
+        final AsyncLog old = sAsync;
+        sAsync = async;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Switch back to synchronous logging. All queued messages are written before this returns.
+     */
+    public static synchronized void stopAsync() {
+        final AsyncLog old = sAsync;
+        sAsync = null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Report repeats held back by {@link #setCoalesceRepeats(long)} and wait until all queued
+     * messages are written.
+     */
+    public static void flush() {
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+        final AsyncLog async = sAsync;
+        if (async != null) {
+            async.flush();
+        }
+    }
+
+    /**
+     * Get the number of messages dropped by asynchronous logging because its buffer was full.
+     *
+     * @return Number of dropped messages since {@link #startAsync(int, int)}.
+     */
+    public static long getAsyncDropped() {
+        final AsyncLog async = sAsync;
+        return async == null ? 0 : async.getDropped();
+    }
+
+    /**
+     * Check level and rate limit of a message before doing any work on it.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.
+     * @param msg   The message you would like logged.
+     * @return true, if the message should be logged
+     */
+    private static boolean accept(final int level, final String tag, final String msg) {
+        if (!enabled(level, tag)) {
+            return false;
+        }
+        final LogRateLimiter limiter = sRateLimiter;
+        return limiter == null || limiter.tryAcquire(level, tag, msg);
+    }
+
+    /**
+     * Check the level of a message, counting it as dropped if disabled.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.
+     * @return true, if the level is enabled for the tag
+     */
+    private static boolean enabled(final int level, final String tag) {
+        if (LogLevels.isEnabled(tag, level)) {
+            return true;
+        }
+        final LogStatsRecorder stats = sStats;
+        if (stats != null) {
+            stats.dropped(level);
+        }
+        return false;
+    }
+
+    /**
+     * Write an event built by {@link #at(int, String)}. Its level is checked already.
+     *
+     * @param event event
+     * @return The number of bytes written.
+     */
+    static int println(final LogEvent event) {
+        final int level = event.getLevel();
+        final String tag = event.getTag();
+        final String msg = event.getMessage();
+        final Throwable tr = event.getThrowable();
+        final LogRateLimiter limiter = sRateLimiter;
+        if (limiter != null && !limiter.tryAcquire(level, tag, msg)) {
+            return 0;
+        }
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, tr == null ? msg : null,
+                event.values())) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            // the event gets reused, structured fields don't survive the queue
+            async.publish(level, tag, event.format(), null, tr);
+            return 0;
+        }
+        final LogSinks sinks = sSinks;
+        if (!sinks.structured) {
+            return println(level, tag, event.format(), tr);
+        }
+        final ThrowableCache cache = sThrowableCache;
+        if (tr != null && cache != null) {
+            final int[] seen = cache.lookup(tr);
+            if (seen[1] == 1) {
+                return print(sinks, level, tag, ThrowableCache.first(msg, seen[0]), event, tr);
+            }
+            return print(sinks, level, tag, msg, event,
+                    ThrowableCache.repeated(tr, seen[0], seen[1]));
+        }
+        return print(sinks, level, tag, msg, event, tr);
+    }
+
+    /**
+     * Pass a message with structured fields to the sinks, counting it if stats are on.
+     */
+    private static int print(final LogSinks sinks, final int level, final String tag,
+            final String msg, final LogFields fields, final Throwable tr) {
+        final LogStatsRecorder stats = sStats;
+        if (stats == null) {
+            return sinks.println(level, tag, msg, fields, tr);
+        }
+        stats.record(level, tag, msg, tr);
+        if (!stats.sample()) {
+            return sinks.println(level, tag, msg, fields, tr);
+        }
+        final long start = System.nanoTime();
+        final int ret = sinks.println(level, tag, msg, fields, tr);
+        stats.latency(System.nanoTime() - start);
+        return ret;
+    }
+
+    /**
+     * Write a message generated by this library, queued if asynchronous logging is on.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.
+     * @param msg   The message.
+     */
+    static void write(final int level, final String tag, final String msg) {
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, null, null);
+        } else {
+            println(level, tag, msg, null);
+        }
+    }
+
+    /**
+     * Get the asynchronous writer, if a record at the given level should be queued. Records at
+     * {@link #ERROR} and above are written synchronously after flushing the queue.
+     *
+     * @param level Logging level
+     * @return writer to publish to, or null
+     */
+    private static AsyncLog queue(final int level) {
+        final AsyncLog async = sAsync;
+        if (async == null) {
+            return null;
+        }
+        if (level >= ERROR) {
+            async.flush();
+            return null;
+        }
+        return async;
+    }
+
+    /**
+     * Send a log message.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param args  Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final Object[] args) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, msg, args)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, args, null);
+            return 0;
+        }
+        return printf(level, tag, msg, args);
+    }
+
+    /**
+     * Format and write a log message without checking its level.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param args  Arguments for msg's String formatting. Last object may be a throwable.
+     */
+    static int printf(final int level, final String tag, final String msg,
+            final Object[] args) {
+        if (args == null || args.length == 0) {
+            return println(level, tag, msg, null);
+        }
+
+        // grep Throwable from args
+        int l = args.length;
+        Throwable tr;
+        if (args[l - 1] instanceof Throwable) {
+            l -= 1;
+            tr = (Throwable) args[l];
+        } else {
+            tr = null;
+        }
+
+        // it's only Throwable, no formatting involved
+        if (l == 0) {
+            return println(level, tag, msg, tr);
+        }
+
+        // evaluate lazy arguments once for all sinks
+        final Object[] values = LogArgs.resolve(args, l);
+
+        // formatted msg
+        final LogSinks sinks = sSinks;
+        if (sinks.raw) {
+            return println(sinks, level, tag, msg, values, l, tr);
+        }
+        return println(level, tag, LogTemplate.of(msg).format(values, l), tr);
+    }
+
+    /**
+     * Send a log message with a single argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting. May be a throwable.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final Object arg0) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, msg, arg0)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, new Object[]{arg0}, null);
+            return 0;
+        }
+        if (arg0 instanceof Throwable) {
+            return println(level, tag, msg, (Throwable) arg0);
+        }
+        final Object value = LogArgs.resolve(arg0);
+        final LogSinks sinks = sSinks;
+        if (sinks.raw) {
+            return println(sinks, level, tag, msg, new Object[]{value}, 1, null);
+        }
+        return println(level, tag, LogTemplate.of(msg).format(value), null);
+    }
+
+    /**
+     * Send a log message with 2 arguments. The argument array is created only if the message is
+     * going to be logged.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     * @param arg1  Argument for msg's String formatting. Last object may be a throwable.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final Object arg0, final Object arg1) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final Object[] args = new Object[]{arg0, arg1};
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, msg, args)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, args, null);
+            return 0;
+        }
+        return printf(level, tag, msg, args);
+    }
+
+    /**
+     * Send a log message with 3 arguments. The argument array is created only if the message is
+     * going to be logged.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     * @param arg1  Argument for msg's String formatting.
+     * @param arg2  Argument for msg's String formatting. Last object may be a throwable.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final Object arg0, final Object arg1, final Object arg2) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final Object[] args = new Object[]{arg0, arg1, arg2};
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, msg, args)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, args, null);
+            return 0;
+        }
+        return printf(level, tag, msg, args);
+    }
+
+    /**
+     * Send a log message with 4 arguments. The argument array is created only if the message is
+     * going to be logged.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     * @param arg1  Argument for msg's String formatting.
+     * @param arg2  Argument for msg's String formatting.
+     * @param arg3  Argument for msg's String formatting. Last object may be a throwable.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final Object arg0, final Object arg1, final Object arg2, final Object arg3) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final Object[] args = new Object[]{arg0, arg1, arg2, arg3};
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, msg, args)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, args, null);
+            return 0;
+        }
+        return printf(level, tag, msg, args);
+    }
+
+    /**
+     * Send a log message with a single int argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final int arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_INT, arg0);
+    }
+
+    /**
+     * Send a log message with a single long argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final long arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_LONG, arg0);
+    }
+
+    /**
+     * Send a log message with a single float argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final float arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_FLOAT, Float.floatToRawIntBits(arg0));
+    }
+
+    /**
+     * Send a log message with a single double argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final double arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_DOUBLE, Double.doubleToRawLongBits(arg0));
+    }
+
+    /**
+     * Send a log message with a single boolean argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final boolean arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_BOOLEAN, arg0 ? 1L : 0L);
+    }
+
+    /**
+     * Send a log message with a single char argument.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param arg0  Argument for msg's String formatting.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final char arg0) {
+        return log(level, tag, msg, LogTemplate.ARG_CHAR, arg0);
+    }
+
+    /**
+     * Send a log message with a single primitive argument. The argument is boxed only if it is
+     * held back, queued or passed to a raw sink.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param type  Argument's type, one of {@code LogTemplate.ARG_*}.
+     * @param bits  Argument, encoded as described for {@link LogTemplate#box(int, long)}.
+     */
+    private static int log(final int level, final String tag, final String msg,
+            final int type, final long bits) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null
+                && coalescer.isRepeat(level, tag, msg, LogTemplate.box(type, bits))) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, new Object[]{LogTemplate.box(type, bits)}, null);
+            return 0;
+        }
+        final LogSinks sinks = sSinks;
+        if (sinks.raw) {
+            return println(sinks, level, tag, msg, new Object[]{LogTemplate.box(type, bits)}, 1,
+                    null);
+        }
+        return println(level, tag, LogTemplate.of(msg).format(type, bits), null);
+    }
+
+    /**
+     * Send a plain log message at a given level. The message is not formatted. Used by code
+     * generated for {@link LogMessage}s.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param tr    A Throwable for printing stack traces, may be null.
+     * @return The number of bytes written.
+     */
+    public static int log(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        if (!accept(level, tag, msg)) {
+            return 0;
+        }
+        final LogCoalescer coalescer = sCoalescer;
+        if (coalescer != null && coalescer.isRepeat(level, tag, tr == null ? msg : null,
+                (Object[]) null)) {
+            return 0;
+        }
+        final AsyncLog async = queue(level);
+        if (async != null) {
+            async.publish(level, tag, msg, null, tr);
+            return 0;
+        }
+        return println(level, tag, msg, tr);
+    }
+
+    /**
+     * Write a plain log message to all sinks without checking its level.
+     *
+     * @param level Logging level
+     * @param tag   Used to identify the source of a log message.  It usually identifies the class
+     *              or activity where the log call occurs.
+     * @param msg   The message you would like logged.
+     * @param tr    A Throwable for printing stack traces.
+     */
+    static int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final ThrowableCache cache = sThrowableCache;
+        if (tr != null && cache != null) {
+            final int[] seen = cache.lookup(tr);
+            if (seen[1] == 1) {
+                return print(level, tag, ThrowableCache.first(msg, seen[0]), tr);
+            }
+            return print(level, tag, msg, ThrowableCache.repeated(tr, seen[0], seen[1]));
+        }
+        return print(level, tag, msg, tr);
+    }
+
+    /**
+     * Write a plain log message to all sinks, counting it if stats are on.
+     */
+    private static int print(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final LogSinks sinks = sSinks;
+        final LogStatsRecorder stats = sStats;
+        if (stats == null) {
+            return println(sinks, level, tag, msg, tr);
+        }
+        stats.record(level, tag, msg, tr);
+        if (!stats.sample()) {
+            return println(sinks, level, tag, msg, tr);
+        }
+        final long start = System.nanoTime();
+        final int ret = println(sinks, level, tag, msg, tr);
+        stats.latency(System.nanoTime() - start);
+        return ret;
+    }
+
+    private static int println(final LogSinks sinks, final int level, final String tag,
+            final String msg, final Throwable tr) {
+        final LogSink single = sinks.single;
+        if (single != null) {
+            return single.println(level, tag, msg, tr);
+        }
+        return sinks.println(level, tag, msg, tr);
+    }
+
+    /**
+     * Pass an unformatted message to the sinks, replacing repeated throwables.
+     */
+    private static int println(final LogSinks sinks, final int level, final String tag,
+            final String msg, final Object[] args, final int count, final Throwable tr) {
+        final ThrowableCache cache = sThrowableCache;
+        if (tr != null && cache != null) {
+            final int[] seen = cache.lookup(tr);
+            if (seen[1] == 1) {
+                return print(sinks, level, tag, ThrowableCache.first(msg, seen[0]), args, count,
+                        tr);
+            }
+            return print(sinks, level, tag, msg, args, count,
+                    ThrowableCache.repeated(tr, seen[0], seen[1]));
+        }
+        return print(sinks, level, tag, msg, args, count, tr);
+    }
+
+    /**
+     * Pass an unformatted message to the sinks, counting it if stats are on.
+     */
+    private static int print(final LogSinks sinks, final int level, final String tag,
+            final String msg, final Object[] args, final int count, final Throwable tr) {
+        final LogStatsRecorder stats = sStats;
+        if (stats == null) {
+            return sinks.println(level, tag, msg, args, count, tr);
+        }
+        stats.record(level, tag, msg, tr);
+        if (!stats.sample()) {
+            return sinks.println(level, tag, msg, args, count, tr);
+        }
+        final long start = System.nanoTime();
+        final int ret = sinks.println(level, tag, msg, args, count, tr);
+        stats.latency(System.nanoTime() - start);
+        return ret;
+    }
+
+    /**
+     * Count a message not matching its format.
+     */
+    static void countFormatFailure() {
+        final LogStatsRecorder stats = sStats;
+        if (stats != null) {
+            stats.formatFailure();
         }
     }
 
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link LazyArg}s for arguments expensive to render.
+ * <p/>
+ * Each rendering has a size cap, so a single huge object can't blow up a log line. Output beyond
+ * the cap is cut off and marked with "...".
+ *
+ * @author flx
+ */
+public final class LogArgs {
+
+    /**
+     * Default maximum number of bytes rendered by {@link #hex(byte[])}.
+     */
+    public static final int DEFAULT_MAX_BYTES = 256;
+
+    /**
+     * Default maximum number of items rendered by {@link #collection(Collection)}.
+     */
+    public static final int DEFAULT_MAX_ITEMS = 32;
+
+    /**
+     * Default maximum number of characters rendered by {@link #json(Object)} and
+     * {@link #truncate(Object)}.
+     */
+    public static final int DEFAULT_MAX_CHARS = 1024;
+
+    /**
+     * Maximum nesting depth of JSON, deeper objects are rendered as strings.
+     */
+    private static final int MAX_DEPTH = 16;
+
+    private static final String ELLIPSIS = "...";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Thrown while rendering JSON when the output exceeds its cap.
+     */
+    private static final class CapReached extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Base class of all arguments in here, evaluating themselves when formatted directly.
+     */
+    private abstract static class Arg implements LazyArg {
+
+        @Override
+        public String toString() {
+            return String.valueOf(value());
+        }
+    }
+
+    private LogArgs() {
+        // hide constructor
+    }
+
+    /**
+     * Evaluate a single argument.
+     *
+     * @param arg argument
+     * @return the argument's value if it is a {@link LazyArg}, the argument otherwise
+     */
+    static Object resolve(final Object arg) {
+        return arg instanceof LazyArg ? ((LazyArg) arg).value() : arg;
+    }
+
+    /**
+     * Evaluate all lazy arguments.
+     *
+     * @param args  arguments
+     * @param count number of arguments to use, starting at index 0
+     * @return args itself if there are no lazy arguments, a copy holding their values otherwise
+     */
+    static Object[] resolve(final Object[] args, final int count) {
+        Object[] resolved = args;
+        for (int i = 0; i < count; i++) {
+            if (args[i] instanceof LazyArg) {
+                if (resolved == args) {
+                    resolved = new Object[count];
+                    System.arraycopy(args, 0, resolved, 0, count);
+                }
+                resolved[i] = ((LazyArg) args[i]).value();
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Render bytes as hex, e.g. "0a 1b 2c", at most {@link #DEFAULT_MAX_BYTES} of them.
+     *
+     * @param data bytes, may be null
+     * @return lazy argument
+     */
+    public static LazyArg hex(final byte[] data) {
+        return hex(data, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Render bytes as hex, e.g. "0a 1b 2c".
+     *
+     * @param data     bytes, may be null
+     * @param maxBytes maximum number of bytes to render
+     * @return lazy argument
+     */
+    public static LazyArg hex(final byte[] data, final int maxBytes) {
+        return new Arg() {
+            @Override
+            public Object value() {
+                if (data == null) {
+                    return null;
+                }
+                final int n = Math.min(data.length, Math.max(0, maxBytes));
+                final StringBuilder sb = new StringBuilder(n * 3 + 24);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(HEX[(data[i] >> 4) & 0xf]).append(HEX[data[i] & 0xf]);
+                }
+                if (n < data.length) {
+                    sb.append(' ').append(ELLIPSIS).append(" (").append(data.length)
+                            .append(" bytes)");
+                }
+                return sb.toString();
+            }
+        };
+    }
+
+    /**
+     * Render a collection like {@link java.util.AbstractCollection#toString()}, at most
+     * {@link #DEFAULT_MAX_ITEMS} items of it.
+     *
+     * @param c collection, may be null
+     * @return lazy argument
+     */
+    public static LazyArg collection(final Collection<?> c) {
+        return collection(c, DEFAULT_MAX_ITEMS, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * Render a collection like {@link java.util.AbstractCollection#toString()}.
+     *
+     * @param c        collection, may be null
+     * @param maxItems maximum number of items to render
+     * @param maxChars maximum number of characters to render
+     * @return lazy argument
+     */
+    public static LazyArg collection(final Collection<?> c, final int maxItems,
+            final int maxChars) {
+        return new Arg() {
+            @Override
+            public Object value() {
+                if (c == null) {
+                    return null;
+                }
+                final StringBuilder sb = new StringBuilder();
+                sb.append('[');
+                int n = 0;
+                for (Object o : c) {
+                    if (n == maxItems || sb.length() >= maxChars) {
+                        sb.setLength(Math.min(sb.length(), Math.max(1, maxChars)));
+                        sb.append(ELLIPSIS).append(" (").append(c.size()).append(" items)]");
+                        return sb.toString();
+                    }
+                    if (n > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(o == c ? "(this Collection)" : o);
+                    n++;
+                }
+                return cap(sb, maxChars).concat("]");
+            }
+        };
+    }
+
+    /**
+     * Render an object as JSON, at most {@link #DEFAULT_MAX_CHARS} characters.
+     *
+     * @param o object, see {@link #json(Object, int)}
+     * @return lazy argument
+     */
+    public static LazyArg json(final Object o) {
+        return json(o, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * Render an object as JSON. Maps become objects, collections and arrays become arrays.
+     * Numbers, booleans and null are written as they are, anything else as a string. Rendering
+     * stops as soon as the cap is reached.
+     * <p/>
+     * Objects rendering themselves as JSON, like org.json's JSONObject, are best passed to
+     * {@link #truncate(Object, int)} instead.
+     *
+     * @param o        object
+     * @param maxChars maximum number of characters to render
+     * @return lazy argument
+     */
+    public static LazyArg json(final Object o, final int maxChars) {
+        return new Arg() {
+            @Override
+            public Object value() {
+                final StringBuilder sb = new StringBuilder();
+                try {
+                    appendJson(sb, o, maxChars, 0);
+                } catch (CapReached e) {
+                    return cap(sb, maxChars);
+                }
+                return sb.toString();
+            }
+        };
+    }
+
+    /**
+     * Render an object's {@link Object#toString()}, at most {@link #DEFAULT_MAX_CHARS}
+     * characters of it.
+     *
+     * @param o object
+     * @return lazy argument
+     */
+    public static LazyArg truncate(final Object o) {
+        return truncate(o, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * Render an object's {@link Object#toString()}, cut off after maxChars characters. The
+     * object is still rendered completely before it is cut off.
+     *
+     * @param o        object
+     * @param maxChars maximum number of characters to render
+     * @return lazy argument
+     */
+    public static LazyArg truncate(final Object o, final int maxChars) {
+        return new Arg() {
+            @Override
+            public Object value() {
+                final String s = String.valueOf(o);
+                if (s.length() <= maxChars) {
+                    return s;
+                }
+                return cap(new StringBuilder(s), maxChars);
+            }
+        };
+    }
+
+    private static String cap(final StringBuilder sb, final int maxChars) {
+        if (sb.length() > maxChars) {
+            sb.setLength(Math.max(0, maxChars));
+            sb.append(ELLIPSIS);
+        }
+        return sb.toString();
+    }
+
+    private static void appendJson(final StringBuilder sb, final Object o, final int maxChars,
+            final int depth) {
+        if (sb.length() > maxChars) {
+            throw new CapReached();
+        }
+        if (o == null || o instanceof Boolean) {
+            sb.append(o);
+        } else if (o instanceof Number) {
+            final double d = ((Number) o).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                appendJsonString(sb, o.toString(), maxChars);
+            } else {
+                sb.append(o);
+            }
+        } else if (o instanceof Map && depth < MAX_DEPTH) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                appendJsonString(sb, String.valueOf(e.getKey()), maxChars);
+                sb.append(':');
+                appendJson(sb, e.getValue(), maxChars, depth + 1);
+            }
+            sb.append('}');
+        } else if (o instanceof Collection && depth < MAX_DEPTH) {
+            sb.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) o) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                appendJson(sb, item, maxChars, depth + 1);
+            }
+            sb.append(']');
+        } else if (o.getClass().isArray() && depth < MAX_DEPTH) {
+            sb.append('[');
+            final int length = Array.getLength(o);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendJson(sb, Array.get(o, i), maxChars, depth + 1);
+            }
+            sb.append(']');
+        } else {
+            appendJsonString(sb, o.toString(), maxChars);
+        }
+        if (sb.length() > maxChars) {
+            throw new CapReached();
+        }
+    }
+
+    private static void appendJsonString(final StringBuilder sb, final String s,
+            final int maxChars) {
+        sb.append('"');
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (sb.length() > maxChars) {
+                throw new CapReached();
+            }
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
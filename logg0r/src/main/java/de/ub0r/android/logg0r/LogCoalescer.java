@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds back exact repeats of the previous message of a tag.
+ * <p/>
+ * Messages are compared by level, template and their arguments before any formatting takes
+ * place. Arguments are compared by hash first. If the hashes match, they are compared to a
+ * snapshot of the previous message's arguments: Strings and boxed primitives by
+ * {@link Object#equals(Object)}, anything else by {@link String#valueOf(Object)} as rendered when
+ * the previous message was logged. A mutable argument logged again after a change is no repeat.
+ * When a different message arrives or the time window expires, a single "last message repeated
+ * N times" line is logged instead of the repeats. Messages with a throwable are never held back.
+ * <p/>
+ * A daemon timer reports held back repeats once per window until {@link #close()} is called.
+ *
+ * @author flx
+ */
+final class LogCoalescer {
+
+    private static final long NANOS_PER_MILLI = 1000L * 1000L;
+
+    /**
+     * Previous message of a tag.
+     */
+    private static final class State {
+
+        final String tag;
+        int level;
+        String msg;
+        int hash;
+        Object arg;
+        Object[] args;
+        int repeats;
+        long since;
+
+        State(final String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final long mWindow;
+    private final ConcurrentHashMap<String, State> mStates
+            = new ConcurrentHashMap<String, State>();
+    private final Timer mTimer;
+
+    /**
+     * Create a coalescer.
+     *
+     * @param window milliseconds after which held back repeats are reported
+     */
+    LogCoalescer(final long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        mWindow = window * NANOS_PER_MILLI;
+        mTimer = new Timer("LogCoalescer", true);
+        mTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                sweep(System.nanoTime());
+            }
+        }, window, window);
+    }
+
+    private static int hash(final Object a) {
+        return 31 + (a == null ? 0 : a.hashCode());
+    }
+
+    private static int hash(final Object[] args) {
+        int h = 1;
+        for (Object a : args) {
+            h = 31 * h + (a == null ? 0 : a.hashCode());
+        }
+        return h;
+    }
+
+    private static boolean isImmutable(final Object a) {
+        return a == null || a instanceof String || a instanceof Integer || a instanceof Long
+                || a instanceof Boolean || a instanceof Character || a instanceof Double
+                || a instanceof Float || a instanceof Short || a instanceof Byte;
+    }
+
+    /**
+     * @return the argument itself if it can't change, its current rendering otherwise
+     */
+    private static Object snapshot(final Object a) {
+        return isImmutable(a) ? a : String.valueOf(a);
+    }
+
+    private static Object[] snapshot(final Object[] args) {
+        final Object[] snapshot = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            snapshot[i] = snapshot(args[i]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Compare an argument to a {@link #snapshot(Object)} of a previous one.
+     */
+    private static boolean same(final Object a, final Object snapshot) {
+        if (isImmutable(a)) {
+            return a == null ? snapshot == null : a.equals(snapshot);
+        }
+        return String.valueOf(a).equals(snapshot);
+    }
+
+    private static boolean same(final Object[] args, final Object[] snapshot) {
+        if (args.length != snapshot.length) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (!same(args[i], snapshot[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check a message with arguments, last object may be a throwable.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message template, null for messages never held back
+     * @param args  arguments, may be null
+     * @return true, if the message should be held back
+     */
+    boolean isRepeat(final int level, final String tag, final String msg, final Object[] args) {
+        final int n = args == null ? 0 : args.length;
+        if (n > 0 && args[n - 1] instanceof Throwable) {
+            return isRepeat(level, tag, null, 0, null, null);
+        }
+        return isRepeat(level, tag, msg, n == 0 ? 1 : hash(args), null, n == 0 ? null : args);
+    }
+
+    /**
+     * Check a message with a single argument, which may be a throwable.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message template, null for messages never held back
+     * @param arg   argument, may be null
+     * @return true, if the message should be held back
+     */
+    boolean isRepeat(final int level, final String tag, final String msg, final Object arg) {
+        if (arg instanceof Throwable) {
+            return isRepeat(level, tag, null, 0, null, null);
+        }
+        return isRepeat(level, tag, msg, hash(arg), arg, null);
+    }
+
+    private boolean isRepeat(final int level, final String tag, final String msg,
+            final int hash, final Object arg, final Object[] args) {
+        final long now = System.nanoTime();
+        final String key = String.valueOf(tag);
+        State s = mStates.get(key);
+        if (s == null) {
+            s = new State(key);
+            final State old = mStates.putIfAbsent(key, s);
+            if (old != null) {
+                s = old;
+            }
+        }
+        final boolean repeat;
+        final int repeats;
+        final int previousLevel;
+        synchronized (s) {
+            previousLevel = s.level;
+            repeat = msg != null && s.level == level && s.hash == hash
+                    && (s.msg == msg || msg.equals(s.msg))
+                    && (args == null) == (s.args == null)
+                    && (args == null ? same(arg, s.arg) : same(args, s.args));
+            if (repeat) {
+                if (s.repeats++ == 0) {
+                    s.since = now;
+                }
+                if (now - s.since < mWindow) {
+                    return true;
+                }
+                // window expired, report and keep holding back
+            } else {
+                s.level = level;
+                s.msg = msg;
+                s.hash = hash;
+                s.arg = args == null ? snapshot(arg) : null;
+                s.args = args == null ? null : snapshot(args);
+            }
+            repeats = s.repeats;
+            s.repeats = 0;
+        }
+        report(previousLevel, key, repeats);
+        return repeat;
+    }
+
+    /**
+     * Report all repeats held back longer than the window.
+     */
+    private void sweep(final long now) {
+        for (State s : mStates.values()) {
+            final int repeats;
+            final int level;
+            synchronized (s) {
+                if (s.repeats == 0 || now - s.since < mWindow) {
+                    continue;
+                }
+                repeats = s.repeats;
+                level = s.level;
+                s.repeats = 0;
+            }
+            report(level, s.tag, repeats);
+        }
+    }
+
+    /**
+     * Report all held back repeats.
+     */
+    void flush() {
+        for (State s : mStates.values()) {
+            final int repeats;
+            final int level;
+            synchronized (s) {
+                repeats = s.repeats;
+                level = s.level;
+                s.repeats = 0;
+            }
+            report(level, s.tag, repeats);
+        }
+    }
+
+    /**
+     * Stop the timer and report all held back repeats.
+     */
+    void close() {
+        mTimer.cancel();
+        flush();
+    }
+
+    private static void report(final int level, final String tag, final int repeats) {
+        if (repeats == 1) {
+            Log.write(level, tag, "last message repeated 1 time");
+        } else if (repeats > 1) {
+            Log.write(level, tag, "last message repeated " + repeats + " times");
+        }
+    }
+}
@@ -4,21 +4,26 @@ import android.app.AlertDialog;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.SharedPreferences;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.widget.Toast;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Helper class to collect and send device Logs by intent.
@@ -32,6 +37,52 @@ public class LogCollector {
 
     private static final String SENDLOG_PACKAGE_NAME = "org.l6n.sendlog";
 
+    private static final String THREAD_NAME = "logg0r-collector";
+
+    private static final String PREFS_NAME = "logg0r";
+
+    private static final String PREF_CHECKPOINT = "collector_checkpoint";
+
+    private static final String PREF_CHECKPOINT_COUNT = "collector_checkpoint_count";
+
+    private static final String MIME_TYPE_GZIP = "application/x-gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Minimum number of bytes between two progress reports posted to the main thread.
+     */
+    private static final long PROGRESS_STEP = 256 * 1024;
+
+    private static volatile LogRedactor sRedactor;
+
+    /**
+     * Callback for {@link #collectLogs(Context, boolean, Callback)}.
+     */
+    public interface Callback extends LogSources.Progress {
+
+        /**
+         * Called while collecting logs.
+         *
+         * @param bytes number of bytes read so far
+         */
+        void onProgress(long bytes);
+
+        /**
+         * Called when all logs are written.
+         *
+         * @param file file holding the logs
+         */
+        void onCollected(File file);
+
+        /**
+         * Called when collecting logs failed. No file is left behind.
+         *
+         * @param e the error
+         */
+        void onError(IOException e);
+    }
+
     private LogCollector() {
         // hide constructor
     }
@@ -51,12 +102,15 @@ public class LogCollector {
             final String sendlogInstallTitle, final String sendlogInstallText,
             final String sendlogRunTitle, final String sendlogRunText) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            if (!sendLogsPlain(context, recipient, true)) {
-                sendLogsWithSendlog(context, recipient, sendlogInstallTitle, sendlogInstallText,
-                        sendlogRunTitle, sendlogRunText);
-            }
+            sendLogsPlain(context, recipient, true, new Runnable() {
+                @Override
+                public void run() {
+                    sendLogsWithSendlog(context, recipient, sendlogInstallTitle,
+                            sendlogInstallText, sendlogRunTitle, sendlogRunText);
+                }
+            });
         } else {
-            sendLogsPlain(context, recipient, false);
+            sendLogsPlain(context, recipient, false, null);
         }
     }
 
@@ -106,19 +160,19 @@ public class LogCollector {
     }
 
     /**
-     * Send logs by reading them directly from device
+     * Send logs by reading them directly from device. Logs are collected on a background thread,
+     * the intent is fired from the main thread when done.
      *
      * @param context   context
      * @param recipient recipient, most likely a mail address
      * @param silent    do not show any message to user
-     * @return true, if intent was fired to send logs
+     * @param fallback  run on main thread, if logs could not be sent; may be null
      */
-    private static boolean sendLogsPlain(final Context context, final String recipient,
-            final boolean silent) {
-        Intent intent = new Intent(Intent.ACTION_SEND);
-        String pkgName = context.getPackageName();
+    private static void sendLogsPlain(final Context context, final String recipient,
+            final boolean silent, final Runnable fallback) {
+        final String pkgName = context.getPackageName();
 
-        StringBuilder sb = new StringBuilder();
+        final StringBuilder sb = new StringBuilder();
         sb.append("Manufacturer: ").append(Build.MANUFACTURER).append("\n");
         sb.append("Model: ").append(Build.MODEL).append("\n");
         sb.append("Device: ").append(Build.DEVICE).append("\n");
@@ -137,47 +191,57 @@ public class LogCollector {
             Log.w(TAG, "package not found: ", pkgName);
         }
         sb.append("\n");
-        try {
-            Process p = Runtime.getRuntime().exec("logcat -d -v time");
-
-            File d = Environment.getExternalStorageDirectory();
-            File f = new File(d, pkgName + "-" + new SimpleDateFormat("y-MM-d_HH-mm-ss")
-                    .format(Calendar.getInstance().getTime()) + "-device-logs.log");
 
-            if (f.exists()) {
-                //noinspection ResultOfMethodCallIgnored
-                f.delete();
+        collectLogs(context, true, new Callback() {
+            @Override
+            public void onProgress(final long bytes) {
+                // nothing to show
             }
 
-            FileOutputStream os = new FileOutputStream(f);
-            InputStream is = p.getInputStream();
-
-            byte[] buf = new byte[1024];
-            int c;
-            while ((c = is.read(buf, 0, buf.length)) > 0) {
-                os.write(buf, 0, c);
+            @Override
+            public void onCollected(final File file) {
+                if (!sendLogFile(context, recipient, silent, file, sb.toString())
+                        && fallback != null) {
+                    fallback.run();
+                }
             }
-            is.close();
-            os.close();
-            p.destroy();
-            Uri u = Uri.parse("file://" + f.getAbsolutePath());
-            intent.putExtra(Intent.EXTRA_STREAM, u);
-        } catch (IOException e) {
-            String s = "IOException while reading logs";
-            Log.e(TAG, s, e);
-            if (!silent) {
-                Toast.makeText(context, s, Toast.LENGTH_LONG).show();
+
+            @Override
+            public void onError(final IOException e) {
+                String s = "IOException while reading logs";
+                Log.e(TAG, s, e);
+                if (!silent) {
+                    Toast.makeText(context, s, Toast.LENGTH_LONG).show();
+                }
+                if (fallback != null) {
+                    fallback.run();
+                }
             }
-            sb.append(s);
-            sb.append("\n\n");
-            return false;
-        }
-        intent.setType("text/plain");
+        });
+    }
+
+    /**
+     * Send collected logs by intent.
+     *
+     * @param context   context
+     * @param recipient recipient, most likely a mail address
+     * @param silent    do not show any message to user
+     * @param f         gzipped log file
+     * @param text      text to send along
+     * @return true, if intent was fired to send logs
+     */
+    private static boolean sendLogFile(final Context context, final String recipient,
+            final boolean silent, final File f, final String text) {
+        String pkgName = context.getPackageName();
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        Uri u = Uri.parse("file://" + f.getAbsolutePath());
+        intent.putExtra(Intent.EXTRA_STREAM, u);
+        intent.setType(MIME_TYPE_GZIP);
         intent.putExtra(Intent.EXTRA_SUBJECT, "SendLog: " + pkgName);
         if (!TextUtils.isEmpty(recipient)) {
             intent.putExtra(Intent.EXTRA_EMAIL, new String[]{recipient, ""});
         }
-        intent.putExtra(Intent.EXTRA_TEXT, sb.toString());
+        intent.putExtra(Intent.EXTRA_TEXT, text);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         try {
             context.startActivity(Intent.createChooser(intent, "SendLog"));
@@ -190,4 +254,318 @@ public class LogCollector {
         }
         return true;
     }
+
+    /**
+     * Collect device logs into a file on external storage. Logs are read and written on a
+     * background thread, all callbacks are called on the main thread. Counters kept by
+     * {@link Log#startStats(int)} are appended.
+     *
+     * @param context  context
+     * @param compress gzip the logs while writing them
+     * @param callback callback
+     */
+    public static void collectLogs(final Context context, final boolean compress,
+            final Callback callback) {
+        collectAsync(context, "-device-logs.log", compress, callback, LogSources.LOGCAT);
+    }
+
+    /**
+     * Dump messages kept by {@link Log#startFlightRecorder(int)} into a file on external storage.
+     * No logcat process is involved, messages filtered from logcat are included. The file is
+     * written on a background thread, all callbacks are called on the main thread.
+     *
+     * @param context  context
+     * @param compress gzip the logs while writing them
+     * @param callback callback
+     */
+    public static void collectFlightRecorder(final Context context, final boolean compress,
+            final Callback callback) {
+        collectAsync(context, "-flight-recorder.log", compress, callback,
+                LogSources.FLIGHT_RECORDER);
+    }
+
+    /**
+     * Collect this process' device logs written since the last call into a file on external
+     * storage. Only the given tags and levels are collected. The checkpoint is kept in the app's
+     * shared preferences per set of tags and level, and moves on only if collecting succeeds.
+     * Logs are read and written on a background thread, all callbacks are called on the main
+     * thread.
+     *
+     * @param context  context
+     * @param tags     tags to collect, null for all tags
+     * @param minLevel lowest level to collect, {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @param compress gzip the logs while writing them
+     * @param callback callback
+     */
+    public static void collectNewLogs(final Context context, final String[] tags,
+            final int minLevel, final boolean compress, final Callback callback) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME,
+                Context.MODE_PRIVATE);
+        final IncrementalLogcat source = newLogs(prefs, tags, minLevel);
+        collectAsync(context, "-new-logs.log", compress, callback, source,
+                checkpoint(prefs, tags, minLevel, source));
+    }
+
+    private static IncrementalLogcat newLogs(final SharedPreferences prefs, final String[] tags,
+            final int minLevel) {
+        if (minLevel < Log.VERBOSE || minLevel > Log.ASSERT) {
+            throw new IllegalArgumentException("Invalid level: " + minLevel);
+        }
+        final String filter = filter(tags, minLevel);
+        return new IncrementalLogcat(LogSources.getLauncher(), android.os.Process.myPid(), tags,
+                minLevel, prefs.getString(PREF_CHECKPOINT + filter, null),
+                prefs.getInt(PREF_CHECKPOINT_COUNT + filter, 0));
+    }
+
+    /**
+     * @return suffix of the checkpoint's preference keys, logs filtered differently are not seen
+     * by the same checkpoint
+     */
+    private static String filter(final String[] tags, final int minLevel) {
+        final StringBuilder sb = new StringBuilder("_").append(minLevel);
+        if (tags != null) {
+            final String[] sorted = tags.clone();
+            Arrays.sort(sorted);
+            for (String tag : sorted) {
+                sb.append(':').append(tag);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Runnable checkpoint(final SharedPreferences prefs, final String[] tags,
+            final int minLevel, final IncrementalLogcat source) {
+        final String filter = filter(tags, minLevel);
+        return new Runnable() {
+            @Override
+            public void run() {
+                prefs.edit().putString(PREF_CHECKPOINT + filter, source.getLast())
+                        .putInt(PREF_CHECKPOINT_COUNT + filter, source.getLastCount()).commit();
+            }
+        };
+    }
+
+    /**
+     * Queue device logs for unattended upload. Logs are read on a background thread, errors are
+     * logged.
+     *
+     * @param uploader uploader
+     */
+    public static void uploadLogs(final LogUploader uploader) {
+        uploadAsync(uploader, LogSources.LOGCAT, null);
+    }
+
+    /**
+     * Queue this process' device logs written since the last call for unattended upload. Shares
+     * its checkpoint with {@link #collectNewLogs(Context, String[], int, boolean, Callback)}
+     * called with the same tags and level.
+     * Logs are read on a background thread, errors are logged.
+     *
+     * @param context  context
+     * @param tags     tags to collect, null for all tags
+     * @param minLevel lowest level to collect, {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @param uploader uploader
+     */
+    public static void uploadNewLogs(final Context context, final String[] tags,
+            final int minLevel, final LogUploader uploader) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME,
+                Context.MODE_PRIVATE);
+        final IncrementalLogcat source = newLogs(prefs, tags, minLevel);
+        uploadAsync(uploader, source, checkpoint(prefs, tags, minLevel, source));
+    }
+
+    /**
+     * Queue logs for upload on a background thread, redacting them if
+     * {@link #setRedactor(LogRedactor)} was called.
+     *
+     * @param uploader  uploader
+     * @param source    logs to collect
+     * @param onSuccess run on the background thread after the logs are queued; may be null
+     */
+    private static void uploadAsync(final LogUploader uploader,
+            final LogSources.Source source, final Runnable onSuccess) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    uploader.enqueue(source, sRedactor);
+                    if (onSuccess != null) {
+                        onSuccess.run();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "error queueing logs", e);
+                } catch (RuntimeException e) {
+                    // e.g. from a launcher or the source; don't crash the app
+                    final IOException error = new IOException("error queueing logs: " + e);
+                    error.initCause(e);
+                    Log.e(TAG, "error queueing logs", error);
+                }
+            }
+        }, THREAD_NAME).start();
+    }
+
+    /**
+     * Forget all checkpoints of {@link #collectNewLogs(Context, String[], int, boolean,
+     * Callback)}, the next call collects all logs of this process still kept by logcat.
+     *
+     * @param context context
+     */
+    public static void resetCheckpoint(final Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME,
+                Context.MODE_PRIVATE);
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(PREF_CHECKPOINT)) {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+
+    /**
+     * Replace the way logcat is started, e.g. to feed canned output in tests.
+     *
+     * @param launcher launcher, null to start logcat as a process
+     */
+    public static void setLauncher(final LogcatLauncher launcher) {
+        LogSources.setLauncher(launcher);
+    }
+
+    /**
+     * Scrub all collected logs before they are written, e.g. to remove mail addresses. Applies
+     * to every file written by {@link LogCollector}, including the ones sent by intent.
+     *
+     * @param redactor redactor, null to write logs as they are
+     */
+    public static void setRedactor(final LogRedactor redactor) {
+        sRedactor = redactor;
+    }
+
+    /**
+     * Collect logs into a file on external storage on a background thread.
+     *
+     * @param context  context
+     * @param suffix   suffix of the file name
+     * @param compress gzip the logs while writing them
+     * @param callback callback, called on main thread
+     * @param source   logs to collect
+     */
+    private static void collectAsync(final Context context, final String suffix,
+            final boolean compress, final Callback callback, final LogSources.Source source) {
+        collectAsync(context, suffix, compress, callback, source, null);
+    }
+
+    /**
+     * Collect logs into a file on external storage on a background thread.
+     *
+     * @param context   context
+     * @param suffix    suffix of the file name
+     * @param compress  gzip the logs while writing them
+     * @param callback  callback, called on main thread
+     * @param source    logs to collect
+     * @param onSuccess run on the background thread after the file is written; may be null
+     */
+    private static void collectAsync(final Context context, final String suffix,
+            final boolean compress, final Callback callback, final LogSources.Source source,
+            final Runnable onSuccess) {
+        final String pkgName = context.getPackageName();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final File f = new File(Environment.getExternalStorageDirectory(),
+                        pkgName + "-" + new SimpleDateFormat("y-MM-d_HH-mm-ss")
+                                .format(Calendar.getInstance().getTime())
+                                + suffix + (compress ? ".gz" : ""));
+                try {
+                    collect(f, compress, new LogSources.Progress() {
+                        private long mReported = 0;
+
+                        @Override
+                        public void onProgress(final long bytes) {
+                            if (bytes - mReported < PROGRESS_STEP) {
+                                return;
+                            }
+                            mReported = bytes;
+                            handler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    callback.onProgress(bytes);
+                                }
+                            });
+                        }
+                    }, source);
+                    if (onSuccess != null) {
+                        onSuccess.run();
+                    }
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCollected(f);
+                        }
+                    });
+                } catch (IOException e) {
+                    postError(handler, callback, e);
+                } catch (RuntimeException e) {
+                    // e.g. from a launcher or the gzip stream; report it instead of hanging
+                    final IOException error = new IOException("error collecting logs: " + e);
+                    error.initCause(e);
+                    postError(handler, callback, error);
+                }
+            }
+        }, THREAD_NAME).start();
+    }
+
+    private static void postError(final Handler handler, final Callback callback,
+            final IOException e) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * Collect logs into a file, redacting them if {@link #setRedactor(LogRedactor)} was called.
+     * Blocks until all logs are written.
+     *
+     * @param f        target file, removed on failure
+     * @param compress gzip the logs while writing them
+     * @param progress called with the number of bytes read so far; may be null
+     * @param source   logs to collect
+     * @throws IOException if reading or writing logs fails
+     */
+    static void collect(final File f, final boolean compress,
+            final LogSources.Progress progress, final LogSources.Source source)
+            throws IOException {
+        // include held back repeats and queued messages
+        Log.flush();
+        if (f.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+        OutputStream os = null;
+        boolean success = false;
+        try {
+            os = new FileOutputStream(f);
+            if (compress) {
+                os = new GZIPOutputStream(os, BUFFER_SIZE);
+            }
+            final LogRedactor redactor = sRedactor;
+            if (redactor != null) {
+                os = redactor.wrap(os);
+            }
+            source.writeTo(os, progress);
+            os.close();
+            os = null;
+            success = true;
+        } finally {
+            LogSources.close(os);
+            if (!success) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+    }
 }
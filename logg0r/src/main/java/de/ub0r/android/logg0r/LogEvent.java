@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+/**
+ * A log message with structured key/value fields, built by {@link Log#at(int, String)}:
+ * <pre>
+ * Log.at(Log.DEBUG, TAG).kv("user", id).kv("ms", elapsed).msg("sync done").log();
+ * </pre>
+ * Disabled levels get a shared instance ignoring all calls. Enabled levels get an instance
+ * reused by the calling thread, primitive values are not boxed. Don't keep a reference to an
+ * event after calling {@link #log()}. Call {@link #release()} on events not logged after all.
+ * <p/>
+ * {@link StructuredLogSink}s get the fields as they are. Other sinks get them appended to the
+ * message as {@code key=value} pairs, e.g. "sync done user=42 ms=17".
+ *
+ * @author flx
+ */
+public final class LogEvent implements LogFields {
+
+    /**
+     * Shared event for disabled levels, ignores everything.
+     */
+    static final LogEvent NOOP = new LogEvent(false);
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final ThreadLocal<LogEvent> POOL = new ThreadLocal<LogEvent>();
+
+    private final boolean mEnabled;
+
+    /**
+     * Event was handed out and is not logged yet, don't hand it out to calls made while building
+     * it, e.g. from an argument's toString().
+     */
+    private boolean mInUse = false;
+
+    /**
+     * Event is passed to the sinks right now, don't log it again from within them.
+     */
+    private boolean mLogging = false;
+
+    private int mLevel;
+    private String mTag;
+    private String mMsg;
+    private Throwable mTr;
+
+    private int mCount = 0;
+    private String[] mKeys;
+    private int[] mTypes;
+
+    /**
+     * Primitive values, doubles are stored as raw long bits.
+     */
+    private long[] mPrimitives;
+
+    private Object[] mObjects;
+
+    private LogEvent(final boolean enabled) {
+        mEnabled = enabled;
+        if (enabled) {
+            mKeys = new String[INITIAL_CAPACITY];
+            mTypes = new int[INITIAL_CAPACITY];
+            mPrimitives = new long[INITIAL_CAPACITY];
+            mObjects = new Object[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Get the calling thread's event.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @return empty event
+     */
+    static LogEvent obtain(final int level, final String tag) {
+        LogEvent e = POOL.get();
+        if (e == null) {
+            e = new LogEvent(true);
+            POOL.set(e);
+        } else if (e.mInUse) {
+            // called while building or logging the pooled event, e.g. from a toString(), or the
+            // pooled event was never logged or released; pool the new one, so a leak costs only
+            // a single allocation
+            e = new LogEvent(true);
+            POOL.set(e);
+        } else {
+            e.clear();
+        }
+        e.mInUse = true;
+        e.mLevel = level;
+        e.mTag = tag;
+        return e;
+    }
+
+    private void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mObjects[i] = null;
+        }
+        mCount = 0;
+        mMsg = null;
+        mTr = null;
+        mTag = null;
+    }
+
+    private int add(final String key, final int type) {
+        if (mCount == mKeys.length) {
+            final int capacity = mCount * 2;
+            final String[] keys = new String[capacity];
+            final int[] types = new int[capacity];
+            final long[] primitives = new long[capacity];
+            final Object[] objects = new Object[capacity];
+            System.arraycopy(mKeys, 0, keys, 0, mCount);
+            System.arraycopy(mTypes, 0, types, 0, mCount);
+            System.arraycopy(mPrimitives, 0, primitives, 0, mCount);
+            System.arraycopy(mObjects, 0, objects, 0, mCount);
+            mKeys = keys;
+            mTypes = types;
+            mPrimitives = primitives;
+            mObjects = objects;
+        }
+        final int i = mCount++;
+        mKeys[i] = key;
+        mTypes[i] = type;
+        return i;
+    }
+
+    /**
+     * Add a field. {@link LazyArg}s are evaluated only once, right before the event is written.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final Object value) {
+        if (mEnabled) {
+            final int i = add(key, TYPE_OBJECT);
+            mObjects[i] = value;
+        }
+        return this;
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final int value) {
+        return kv(key, (long) value);
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final long value) {
+        if (mEnabled) {
+            final int i = add(key, TYPE_LONG);
+            mPrimitives[i] = value;
+        }
+        return this;
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final float value) {
+        return kv(key, (double) value);
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final double value) {
+        if (mEnabled) {
+            final int i = add(key, TYPE_DOUBLE);
+            mPrimitives[i] = Double.doubleToRawLongBits(value);
+        }
+        return this;
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final boolean value) {
+        if (mEnabled) {
+            final int i = add(key, TYPE_BOOLEAN);
+            mPrimitives[i] = value ? 1L : 0L;
+        }
+        return this;
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param key   key
+     * @param value value
+     * @return this event
+     */
+    public LogEvent kv(final String key, final char value) {
+        if (mEnabled) {
+            final int i = add(key, TYPE_CHAR);
+            mPrimitives[i] = value;
+        }
+        return this;
+    }
+
+    /**
+     * Set the message.
+     *
+     * @param msg message
+     * @return this event
+     */
+    public LogEvent msg(final String msg) {
+        if (mEnabled) {
+            mMsg = msg;
+        }
+        return this;
+    }
+
+    /**
+     * Set a throwable to log with the message.
+     *
+     * @param tr throwable
+     * @return this event
+     */
+    public LogEvent tr(final Throwable tr) {
+        if (mEnabled) {
+            mTr = tr;
+        }
+        return this;
+    }
+
+    /**
+     * Write the event. The event must not be used afterwards.
+     *
+     * @return The number of bytes written.
+     */
+    public int log() {
+        if (!mEnabled || mLogging) {
+            return 0;
+        }
+        mLogging = true;
+        try {
+            for (int i = 0; i < mCount; i++) {
+                if (mObjects[i] instanceof LazyArg) {
+                    mObjects[i] = ((LazyArg) mObjects[i]).value();
+                }
+            }
+            return Log.println(this);
+        } finally {
+            mLogging = false;
+            release();
+        }
+    }
+
+    /**
+     * Drop an event without writing it. The event must not be used afterwards.
+     */
+    public void release() {
+        if (mEnabled && !mLogging) {
+            clear();
+            mInUse = false;
+        }
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    String getTag() {
+        return mTag;
+    }
+
+    String getMessage() {
+        return mMsg;
+    }
+
+    Throwable getThrowable() {
+        return mTr;
+    }
+
+    /**
+     * @return a copy of all keys and values, primitives boxed
+     */
+    Object[] values() {
+        final Object[] values = new Object[mCount * 2];
+        for (int i = 0; i < mCount; i++) {
+            values[2 * i] = mKeys[i];
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    values[2 * i + 1] = getLong(i);
+                    break;
+                case TYPE_DOUBLE:
+                    values[2 * i + 1] = getDouble(i);
+                    break;
+                case TYPE_BOOLEAN:
+                    values[2 * i + 1] = getBoolean(i);
+                    break;
+                case TYPE_CHAR:
+                    values[2 * i + 1] = getChar(i);
+                    break;
+                default:
+                    values[2 * i + 1] = mObjects[i];
+                    break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return message with all fields appended
+     */
+    String format() {
+        return LogFormat.format(mMsg, this);
+    }
+
+    @Override
+    public int getFieldCount() {
+        return mCount;
+    }
+
+    @Override
+    public String getKey(final int i) {
+        return mKeys[i];
+    }
+
+    @Override
+    public int getType(final int i) {
+        return mTypes[i];
+    }
+
+    @Override
+    public Object getObject(final int i) {
+        return mObjects[i];
+    }
+
+    @Override
+    public long getLong(final int i) {
+        return mPrimitives[i];
+    }
+
+    @Override
+    public double getDouble(final int i) {
+        return Double.longBitsToDouble(mPrimitives[i]);
+    }
+
+    @Override
+    public boolean getBoolean(final int i) {
+        return mPrimitives[i] != 0L;
+    }
+
+    @Override
+    public char getChar(final int i) {
+        return (char) mPrimitives[i];
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+/**
+ * Structured key/value fields of a log message, see {@link Log#at(int, String)}.
+ * <p/>
+ * Primitive values are kept without boxing, read them with the getter matching their type.
+ *
+ * @author flx
+ */
+public interface LogFields {
+
+    /**
+     * Field holds an object, read it with {@link #getObject(int)}.
+     */
+    int TYPE_OBJECT = 0;
+
+    /**
+     * Field holds an int or long, read it with {@link #getLong(int)}.
+     */
+    int TYPE_LONG = 1;
+
+    /**
+     * Field holds a float or double, read it with {@link #getDouble(int)}.
+     */
+    int TYPE_DOUBLE = 2;
+
+    /**
+     * Field holds a boolean, read it with {@link #getBoolean(int)}.
+     */
+    int TYPE_BOOLEAN = 3;
+
+    /**
+     * Field holds a char, read it with {@link #getChar(int)}.
+     */
+    int TYPE_CHAR = 4;
+
+    /**
+     * @return number of fields
+     */
+    int getFieldCount();
+
+    /**
+     * @param i index of the field
+     * @return the field's key
+     */
+    String getKey(int i);
+
+    /**
+     * @param i index of the field
+     * @return one of {@code TYPE_*}
+     */
+    int getType(int i);
+
+    /**
+     * @param i index of a field of {@link #TYPE_OBJECT}
+     * @return the field's value, may be null
+     */
+    Object getObject(int i);
+
+    /**
+     * @param i index of a field of {@link #TYPE_LONG}
+     * @return the field's value
+     */
+    long getLong(int i);
+
+    /**
+     * @param i index of a field of {@link #TYPE_DOUBLE}
+     * @return the field's value
+     */
+    double getDouble(int i);
+
+    /**
+     * @param i index of a field of {@link #TYPE_BOOLEAN}
+     * @return the field's value
+     */
+    boolean getBoolean(int i);
+
+    /**
+     * @param i index of a field of {@link #TYPE_CHAR}
+     * @return the field's value
+     */
+    char getChar(int i);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Helpers for rendering log messages as text outside of logcat.
+ *
+ * @author flx
+ */
+final class LogFormat {
+
+    /**
+     * Timestamp format used by {@code logcat -v time}.
+     */
+    static final String TIME_PATTERN = "MM-dd HH:mm:ss.SSS";
+
+    private LogFormat() {
+        // no instances
+    }
+
+    /**
+     * Get logcat's single letter representation of a log level.
+     *
+     * @param level log level
+     * @return one of V, D, I, W, E, A or ?
+     */
+    static char levelChar(final int level) {
+        switch (level) {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            case Log.ERROR:
+                return 'E';
+            case Log.ASSERT:
+                return 'A';
+            default:
+                return '?';
+        }
+    }
+
+    /**
+     * Append a message in logcat's brief format: {@code D/tag: msg}. The stack trace of tr is
+     * appended on the following lines.
+     *
+     * @param sb    builder to append to
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message
+     * @param tr    throwable, may be null
+     * @return sb
+     */
+    static StringBuilder appendBrief(final StringBuilder sb, final int level, final String tag,
+            final String msg, final Throwable tr) {
+        sb.append(levelChar(level)).append('/').append(tag).append(": ").append(msg);
+        if (tr != null) {
+            sb.append('\n').append(stackTrace(tr));
+        }
+        return sb;
+    }
+
+    /**
+     * Append a message in logcat's time format: {@code 01-23 12:34:56.789 D/tag: msg}. Every line
+     * of a multi-line message gets its own prefix.
+     *
+     * @param sb    builder to append to
+     * @param time  formatted timestamp
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message
+     * @return sb
+     */
+    static StringBuilder appendTime(final StringBuilder sb, final String time, final int level,
+            final String tag, final String msg) {
+        int start = 0;
+        while (true) {
+            final int end = msg.indexOf('\n', start);
+            sb.append(time).append(' ').append(levelChar(level)).append('/').append(tag)
+                    .append(": ");
+            if (end < 0) {
+                sb.append(msg, start, msg.length()).append('\n');
+                return sb;
+            }
+            sb.append(msg, start, end).append('\n');
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Render a throwable's stack trace like {@link android.util.Log#getStackTraceString(Throwable)}
+     * without depending on android classes. Trailing line breaks are removed.
+     *
+     * @param tr throwable
+     * @return stack trace
+     */
+    static String stackTrace(final Throwable tr) {
+        final StringWriter sw = new StringWriter();
+        final PrintWriter pw = new PrintWriter(sw);
+        tr.printStackTrace(pw);
+        pw.flush();
+        final StringBuffer sb = sw.getBuffer();
+        int l = sb.length();
+        while (l > 0 && (sb.charAt(l - 1) == '\n' || sb.charAt(l - 1) == '\r')) {
+            l--;
+        }
+        return sb.substring(0, l);
+    }
+
+    /**
+     * Render a message with structured fields appended as {@code key=value} pairs. Values
+     * containing spaces, quotes or '=' are quoted.
+     *
+     * @param msg    message, may be null
+     * @param fields fields
+     * @return message and fields
+     */
+    static String format(final String msg, final LogFields fields) {
+        final StringBuilder sb = LogTemplate.acquireBuilder();
+        try {
+            if (msg != null) {
+                sb.append(msg);
+            }
+            final int n = fields.getFieldCount();
+            for (int i = 0; i < n; i++) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(fields.getKey(i)).append('=');
+                switch (fields.getType(i)) {
+                    case LogFields.TYPE_LONG:
+                        sb.append(fields.getLong(i));
+                        break;
+                    case LogFields.TYPE_DOUBLE:
+                        sb.append(fields.getDouble(i));
+                        break;
+                    case LogFields.TYPE_BOOLEAN:
+                        sb.append(fields.getBoolean(i));
+                        break;
+                    case LogFields.TYPE_CHAR:
+                        appendValue(sb, String.valueOf(fields.getChar(i)));
+                        break;
+                    default:
+                        appendValue(sb, String.valueOf(fields.getObject(i)));
+                        break;
+                }
+            }
+            return sb.toString();
+        } finally {
+            LogTemplate.releaseBuilder(sb);
+        }
+    }
+
+    private static void appendValue(final StringBuilder sb, final String value) {
+        final int length = value.length();
+        boolean quote = length == 0;
+        for (int i = 0; i < length && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved per-tag minimum log levels.
+ * <p/>
+ * The minimum level of each tag is resolved once and cached. The cache is dropped whenever the
+ * configuration changes or {@link #invalidate()} is called.
+ *
+ * @author flx
+ */
+final class LogLevels {
+
+    /**
+     * Pseudo level turning off all logging for a tag.
+     */
+    static final int SUPPRESS = Log.ASSERT + 1;
+
+    /**
+     * Key used for {@code null} tags, {@link ConcurrentHashMap} does not take {@code null} keys.
+     */
+    private static final String NULL_TAG = "";
+
+    /**
+     * Levels set explicitly by {@link #setLevel(String, int)}.
+     */
+    private static final ConcurrentHashMap<String, Integer> sTagLevels
+            = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Resolved minimum level per tag. Replaced rather than cleared on changes: a level resolved
+     * before a change goes to the old map and is never seen again.
+     */
+    private static volatile ConcurrentHashMap<String, Integer> sResolved
+            = new ConcurrentHashMap<String, Integer>();
+
+    private static volatile int sMinLevel = Log.VERBOSE;
+
+    private static volatile boolean sUseLoggable = false;
+
+    /**
+     * Lowest level accepted by any registered sink.
+     */
+    private static volatile int sSinkLevel = Log.VERBOSE;
+
+    private LogLevels() {
+        // no instances
+    }
+
+    /**
+     * Check whether a message would be logged.
+     *
+     * @param tag   tag
+     * @param level log level
+     * @return true, if message should be logged
+     */
+    static boolean isEnabled(final String tag, final int level) {
+        if (level < sSinkLevel) {
+            return false;
+        }
+        if (level >= Log.ASSERT) {
+            return true;
+        }
+        final String key = tag == null ? NULL_TAG : tag;
+        final ConcurrentHashMap<String, Integer> resolved = sResolved;
+        Integer min = resolved.get(key);
+        if (min == null) {
+            min = resolve(tag, key);
+            resolved.put(key, min);
+        }
+        return level >= min;
+    }
+
+    /**
+     * Set the minimum level for a single tag, overriding the global minimum level and
+     * {@link android.util.Log#isLoggable(String, int)}.
+     *
+     * @param tag   tag
+     * @param level minimum level
+     */
+    static void setLevel(final String tag, final int level) {
+        sTagLevels.put(tag == null ? NULL_TAG : tag, level);
+        invalidate();
+    }
+
+    /**
+     * Remove the minimum level set for a single tag.
+     *
+     * @param tag tag
+     */
+    static void clearLevel(final String tag) {
+        sTagLevels.remove(tag == null ? NULL_TAG : tag);
+        invalidate();
+    }
+
+    /**
+     * Set the minimum level for all tags without a level of their own.
+     *
+     * @param level minimum level
+     */
+    static void setMinLevel(final int level) {
+        sMinLevel = level;
+        invalidate();
+    }
+
+    /**
+     * @return minimum level for all tags without a level of their own
+     */
+    static int getMinLevel() {
+        return sMinLevel;
+    }
+
+    /**
+     * Take {@link android.util.Log#isLoggable(String, int)} into account when resolving levels.
+     *
+     * @param useLoggable true to honour {@code log.tag.*} system properties
+     */
+    static void setUseLoggable(final boolean useLoggable) {
+        sUseLoggable = useLoggable;
+        invalidate();
+    }
+
+    /**
+     * Set the lowest level accepted by any registered sink.
+     *
+     * @param level minimum level
+     */
+    static void setSinkLevel(final int level) {
+        sSinkLevel = level;
+    }
+
+    /**
+     * Drop all resolved levels. They get resolved again on next use.
+     */
+    static void invalidate() {
+        sResolved = new ConcurrentHashMap<String, Integer>();
+    }
+
+    private static Integer resolve(final String tag, final String key) {
+        Integer level = sTagLevels.get(key);
+        if (level != null) {
+            return level;
+        }
+        int min = sMinLevel;
+        if (sUseLoggable) {
+            min = Math.max(min, loggableLevel(tag));
+        }
+        return min;
+    }
+
+    /**
+     * Find the lowest level {@link android.util.Log#isLoggable(String, int)} allows for a tag.
+     *
+     * @param tag tag
+     * @return lowest loggable level or {@link #SUPPRESS}
+     */
+    private static int loggableLevel(final String tag) {
+        if (tag == null) {
+            return Log.VERBOSE;
+        }
+        try {
+            for (int level = Log.VERBOSE; level <= Log.ASSERT; level++) {
+                if (android.util.Log.isLoggable(tag, level)) {
+                    return level;
+                }
+            }
+            return SUPPRESS;
+        } catch (IllegalArgumentException e) {
+            // tag too long for system properties, do not filter at all
+            return Log.VERBOSE;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a log message with a fixed shape on a method of an interface:
+ * <pre>
+ * public interface SyncLog {
+ *     &#64;LogMessage(level = Log.DEBUG, format = "sync %s took %d ms")
+ *     void syncDone(String account, long millis);
+ * }
+ * </pre>
+ * The annotation processor in the {@code processor} module generates an implementation named
+ * {@code Logg0r_SyncLog}. It checks the level first and appends each parameter directly, without
+ * an argument array, boxing or {@link String#format(String, Object...)}.
+ * <p/>
+ * Formats may use {@code %s} for any parameter, {@code %d} for integral parameters, {@code %%}
+ * and {@code %n}. The number of parameters must match the number of placeholders, an additional
+ * last parameter may be a {@link Throwable}. Anything else is a compile error.
+ *
+ * @author flx
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface LogMessage {
+
+    /**
+     * @return Logging level, e.g. {@link Log#DEBUG}.
+     */
+    int level();
+
+    /**
+     * @return The message's format.
+     */
+    String format();
+
+    /**
+     * @return Tag to log with, defaults to the interface's simple name.
+     */
+    String tag() default "";
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token bucket rate limiting per tag, or per tag and message template.
+ * <p/>
+ * Each bucket is a single {@link AtomicLong} per level holding the bucket's theoretical arrival
+ * time: a message is allowed if it does not move that time more than the burst ahead of now.
+ * Taking a token is one CAS, no locks are involved. Suppressed messages are counted and
+ * summarized by a daemon timer between {@link #start()} and {@link #close()}.
+ * <p/>
+ * Instances are immutable apart from the buckets, {@link Log} creates a new one on any change.
+ *
+ * @author flx
+ */
+final class LogRateLimiter {
+
+    private static final String TAG = "logg0r";
+
+    /**
+     * Maximum number of templates tracked per tag. Further templates share the tag's bucket.
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    private static final long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+
+    /**
+     * Buckets of a tag or template.
+     */
+    private static final class Bucket {
+
+        final String tag;
+        final String template;
+
+        /**
+         * Theoretical arrival time per level.
+         */
+        final AtomicLongArray tat = new AtomicLongArray(Log.ASSERT + 1);
+
+        final AtomicLong suppressed = new AtomicLong();
+
+        /**
+         * Buckets per template, null for template buckets.
+         */
+        final ConcurrentHashMap<String, Bucket> templates;
+
+        Bucket(final String tag, final String template, final boolean perTemplate) {
+            this.tag = tag;
+            this.template = template;
+            templates = perTemplate ? new ConcurrentHashMap<String, Bucket>() : null;
+            for (int i = 0; i < tat.length(); i++) {
+                tat.set(i, Long.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds between two tokens per level, 0 for no limit.
+     */
+    private final long[] mIntervals;
+
+    /**
+     * Maximum time a bucket may run ahead of now per level.
+     */
+    private final long[] mBursts;
+
+    private final boolean mPerTemplate;
+    private final long mSummaryInterval;
+
+    private final ConcurrentHashMap<String, Bucket> mBuckets
+            = new ConcurrentHashMap<String, Bucket>();
+
+    /**
+     * Summarizes suppressed messages, null if not started. Guarded by this.
+     */
+    private Timer mTimer;
+
+    /**
+     * Time of the last summary in nanoseconds. Guarded by this.
+     */
+    private long mLastSummary;
+
+    /**
+     * Create a limiter without limits.
+     *
+     * @param perTemplate     true to limit per tag and message template
+     * @param summaryInterval milliseconds between two summaries of suppressed messages
+     */
+    LogRateLimiter(final boolean perTemplate, final long summaryInterval) {
+        this(new long[Log.ASSERT + 1], new long[Log.ASSERT + 1], perTemplate, summaryInterval);
+    }
+
+    private LogRateLimiter(final long[] intervals, final long[] bursts,
+            final boolean perTemplate, final long summaryInterval) {
+        if (summaryInterval <= 0) {
+            throw new IllegalArgumentException("Invalid summary interval: " + summaryInterval);
+        }
+        mIntervals = intervals;
+        mBursts = bursts;
+        mPerTemplate = perTemplate;
+        mSummaryInterval = summaryInterval;
+    }
+
+    /**
+     * Create a copy with a new limit for a level.
+     *
+     * @param level     log level
+     * @param perSecond messages per second, 0 for no limit
+     * @param burst     messages allowed at once
+     * @return new limiter
+     */
+    LogRateLimiter withLimit(final int level, final int perSecond, final int burst) {
+        if (level < 0 || level >= mIntervals.length) {
+            throw new IllegalArgumentException("Invalid log level: " + level);
+        }
+        if (perSecond < 0 || (perSecond > 0 && burst < 1)) {
+            throw new IllegalArgumentException("Invalid rate limit: " + perSecond + "/" + burst);
+        }
+        final long[] intervals = mIntervals.clone();
+        final long[] bursts = mBursts.clone();
+        intervals[level] = perSecond == 0 ? 0 : NANOS_PER_SECOND / perSecond;
+        bursts[level] = intervals[level] * burst;
+        return new LogRateLimiter(intervals, bursts, mPerTemplate, mSummaryInterval);
+    }
+
+    /**
+     * Create a copy with a different key or summary interval.
+     *
+     * @param perTemplate     true to limit per tag and message template
+     * @param summaryInterval milliseconds between two summaries of suppressed messages
+     * @return new limiter
+     */
+    LogRateLimiter withConfig(final boolean perTemplate, final long summaryInterval) {
+        return new LogRateLimiter(mIntervals, mBursts, perTemplate, summaryInterval);
+    }
+
+    /**
+     * @return true, if no level has a limit
+     */
+    boolean isEmpty() {
+        for (long i : mIntervals) {
+            if (i != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isPerTemplate() {
+        return mPerTemplate;
+    }
+
+    long getSummaryInterval() {
+        return mSummaryInterval;
+    }
+
+    /**
+     * Start summarizing suppressed messages every summary interval.
+     */
+    synchronized void start() {
+        if (mTimer != null) {
+            return;
+        }
+        mLastSummary = System.nanoTime();
+        mTimer = new Timer("LogRateLimiter", true);
+        mTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                summarize();
+            }
+        }, mSummaryInterval, mSummaryInterval);
+    }
+
+    /**
+     * Stop the timer and summarize all messages suppressed since the last summary.
+     */
+    synchronized void close() {
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer = null;
+            summarize();
+        }
+    }
+
+    /**
+     * Take a token for a message.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message template
+     * @return false, if the message should be suppressed
+     */
+    boolean tryAcquire(final int level, final String tag, final String msg) {
+        if (level < 0 || level >= mIntervals.length) {
+            return true;
+        }
+        final long interval = mIntervals[level];
+        if (interval == 0) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        final Bucket b = bucket(tag, msg);
+        final AtomicLongArray tat = b.tat;
+        final long burst = mBursts[level];
+        while (true) {
+            final long t = tat.get(level);
+            final long next = Math.max(t, now) + interval;
+            if (next - now > burst) {
+                b.suppressed.incrementAndGet();
+                return false;
+            }
+            if (tat.compareAndSet(level, t, next)) {
+                return true;
+            }
+        }
+    }
+
+    private Bucket bucket(final String tag, final String msg) {
+        final String key = String.valueOf(tag);
+        Bucket b = mBuckets.get(key);
+        if (b == null) {
+            b = new Bucket(key, null, mPerTemplate);
+            final Bucket old = mBuckets.putIfAbsent(key, b);
+            if (old != null) {
+                b = old;
+            }
+        }
+        if (!mPerTemplate || msg == null) {
+            return b;
+        }
+        Bucket t = b.templates.get(msg);
+        if (t == null) {
+            if (b.templates.size() >= MAX_TEMPLATES) {
+                return b;
+            }
+            t = new Bucket(key, msg, false);
+            final Bucket old = b.templates.putIfAbsent(msg, t);
+            if (old != null) {
+                t = old;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Log a summary line for each bucket with suppressed messages.
+     */
+    private synchronized void summarize() {
+        final long now = System.nanoTime();
+        final long seconds = Math.max(1,
+                (now - mLastSummary + NANOS_PER_SECOND / 2) / NANOS_PER_SECOND);
+        mLastSummary = now;
+        for (Bucket b : mBuckets.values()) {
+            summarize(b, seconds);
+            if (b.templates != null) {
+                for (Bucket t : b.templates.values()) {
+                    summarize(t, seconds);
+                }
+            }
+        }
+    }
+
+    private static void summarize(final Bucket b, final long seconds) {
+        final long n = b.suppressed.getAndSet(0);
+        if (n == 0) {
+            return;
+        }
+        final String msg;
+        if (b.template == null) {
+            msg = String.format("Tag %s: %,d messages suppressed in last %ds", b.tag, n, seconds);
+        } else {
+            msg = String.format("Tag %s: %,d messages like \"%s\" suppressed in last %ds", b.tag,
+                    n, b.template, seconds);
+        }
+        Log.write(Log.WARN, TAG, msg);
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scrubs personal data from collected logs before they leave the device.
+ * <p/>
+ * {@link #wrap(OutputStream)} splits everything written into chunks ending at a line break,
+ * redacts the chunks on a pool of worker threads and writes them to the wrapped stream in their
+ * original order. Compression in the wrapped stream overlaps with redaction of the following
+ * chunks. At most {@link #getMaxChunks()} chunks are held at any time, no matter how large the
+ * logs are.
+ * <pre>
+ * LogCollector.setRedactor(new LogRedactor(LogRedactor.EMAIL, LogRedactor.PHONE,
+ *         LogRedactor.literal(accountName, "&lt;account&gt;")));
+ * </pre>
+ * Rules are applied one after another to each chunk. A line longer than a chunk is split, a
+ * match spanning the split is not found.
+ *
+ * @author flx
+ */
+public class LogRedactor {
+
+    /**
+     * Default size of a chunk in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+    private static final String THREAD_NAME = "logg0r-redactor-";
+
+    /**
+     * Replaces parts of a chunk.
+     */
+    public abstract static class Rule {
+
+        /**
+         * Redact a chunk of whole lines.
+         *
+         * @param s chunk
+         * @return redacted chunk, s itself if nothing matched
+         */
+        public abstract String apply(String s);
+    }
+
+    /**
+     * Rule replacing matches of a precompiled pattern.
+     */
+    private static final class PatternRule extends Rule {
+
+        private final Pattern mPattern;
+        private final String mReplacement;
+
+        PatternRule(final Pattern pattern, final String replacement) {
+            mPattern = pattern;
+            mReplacement = replacement;
+        }
+
+        @Override
+        public String apply(final String s) {
+            final Matcher m = mPattern.matcher(s);
+            if (!m.find()) {
+                return s;
+            }
+            final StringBuffer sb = new StringBuffer(s.length());
+            do {
+                m.appendReplacement(sb, mReplacement);
+            } while (m.find());
+            m.appendTail(sb);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Rule replacing a fixed string.
+     */
+    private static final class LiteralRule extends Rule {
+
+        private final String mLiteral;
+        private final String mReplacement;
+
+        LiteralRule(final String literal, final String replacement) {
+            mLiteral = literal;
+            mReplacement = replacement;
+        }
+
+        @Override
+        public String apply(final String s) {
+            int i = s.indexOf(mLiteral);
+            if (i < 0) {
+                return s;
+            }
+            final StringBuilder sb = new StringBuilder(s.length());
+            int start = 0;
+            do {
+                sb.append(s, start, i).append(mReplacement);
+                start = i + mLiteral.length();
+                i = s.indexOf(mLiteral, start);
+            } while (i >= 0);
+            return sb.append(s, start, s.length()).toString();
+        }
+    }
+
+    /**
+     * Mail addresses.
+     */
+    public static final Rule EMAIL = pattern(
+            "(?<![A-Za-z0-9._%+-])[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}", "<email>");
+
+    /**
+     * Phone numbers in international or national format, e.g. +49 30 1234567 or 030/1234567.
+     * Plain numbers without a leading + or 0 are left alone, they are mostly ids and counters.
+     * Logcat's timestamps, e.g. "09-03 12:34:56.089  1234  1234", are left alone as well.
+     */
+    public static final Rule PHONE = pattern("(?<![\\w+.])(?!\\d\\d-\\d\\d \\d\\d:)"
+            + "(?:\\+|0)[1-9][0-9 ()/-]{5,}[0-9](?!\\w)", "<phone>");
+
+    /**
+     * Values of credentials, e.g. "Authorization: Bearer abc", "token=abc" or "password: abc".
+     * Keys must be followed by ':' or '=', plain text like "session closed" is left alone.
+     */
+    public static final Rule TOKEN = pattern("(?i)\\b(bearer\\s+|(?:bearer|token|access_token"
+            + "|api[_-]?key|password|passwd|secret|session)[\"']?\\s*[:=]\\s*[\"']?)"
+            + "[^\\s\"'&,;]+", "$1<redacted>");
+
+    /**
+     * UUIDs, e.g. installation and device ids.
+     */
+    public static final Rule UUID = pattern(
+            "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b",
+            "<uuid>");
+
+    private final Rule[] mRules;
+    private final int mChunkSize;
+    private final int mParallelism;
+
+    /**
+     * Create a redactor using all CPUs and {@link #DEFAULT_CHUNK_SIZE}.
+     *
+     * @param rules rules to apply, in order
+     */
+    public LogRedactor(final Rule... rules) {
+        this(DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(), rules);
+    }
+
+    /**
+     * Create a redactor.
+     *
+     * @param chunkSize   size of a chunk in bytes
+     * @param parallelism number of worker threads, 1 to redact on the writing thread
+     * @param rules       rules to apply, in order
+     */
+    public LogRedactor(final int chunkSize, final int parallelism, final Rule... rules) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        mChunkSize = chunkSize;
+        mParallelism = parallelism;
+        mRules = rules.clone();
+    }
+
+    /**
+     * Create a rule replacing all matches of a pattern.
+     *
+     * @param regex       pattern, compiled once
+     * @param replacement replacement, may refer to groups like {@code $1}
+     * @return rule
+     */
+    public static Rule pattern(final String regex, final String replacement) {
+        return new PatternRule(Pattern.compile(regex), replacement);
+    }
+
+    /**
+     * Create a rule replacing all occurrences of a fixed string, e.g. the user's account name.
+     *
+     * @param literal     string to replace
+     * @param replacement replacement
+     * @return rule
+     */
+    public static Rule literal(final String literal, final String replacement) {
+        if (literal == null || literal.length() == 0) {
+            throw new IllegalArgumentException("Empty literal");
+        }
+        return new LiteralRule(literal, replacement);
+    }
+
+    /**
+     * @return size of a chunk in bytes
+     */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * @return number of worker threads
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * The memory ceiling: chunks being filled, redacted or written are never more than this.
+     * Each chunk takes up to {@link #getChunkSize()} bytes plus its redacted copy.
+     *
+     * @return maximum number of chunks held at once
+     */
+    public int getMaxChunks() {
+        return mParallelism == 1 ? 1 : 2 * mParallelism + 1;
+    }
+
+    /**
+     * Redact a chunk of whole lines.
+     *
+     * @param s lines
+     * @return redacted lines
+     */
+    String redact(final String s) {
+        String r = s;
+        for (Rule rule : mRules) {
+            r = rule.apply(r);
+        }
+        return r;
+    }
+
+    /**
+     * Redact everything written to a stream. Closing the returned stream waits for all chunks and
+     * closes the wrapped stream.
+     *
+     * @param os stream receiving the redacted logs
+     * @return stream to write logs to
+     */
+    public OutputStream wrap(final OutputStream os) {
+        return new RedactingOutputStream(os);
+    }
+
+    /**
+     * Lines to redact, replaced by their redacted version when done.
+     */
+    private final class Chunk implements Callable<Chunk> {
+
+        byte[] mData;
+        int mLength;
+
+        Chunk(final byte[] data, final int length) {
+            mData = data;
+            mLength = length;
+        }
+
+        @Override
+        public Chunk call() throws Exception {
+            final String s = Utf8.decode(mData, 0, mLength);
+            final String r = redact(s);
+            if (r != s) {
+                mData = r.getBytes("UTF-8");
+                mLength = mData.length;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Cuts the logs into chunks, hands them to the workers and writes them back in order.
+     */
+    private final class RedactingOutputStream extends OutputStream {
+
+        private final OutputStream mOut;
+        private final LinkedList<Future<Chunk>> mPending = new LinkedList<Future<Chunk>>();
+        private ExecutorService mExecutor;
+        private byte[] mBuffer;
+        private int mCount;
+        private boolean mClosed;
+
+        RedactingOutputStream(final OutputStream os) {
+            mOut = os;
+            mBuffer = new byte[mChunkSize];
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (mCount == mBuffer.length) {
+                cut();
+            }
+            mBuffer[mCount++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            int o = off;
+            int n = len;
+            while (n > 0) {
+                if (mCount == mBuffer.length) {
+                    cut();
+                }
+                final int l = Math.min(n, mBuffer.length - mCount);
+                System.arraycopy(b, o, mBuffer, mCount, l);
+                mCount += l;
+                o += l;
+                n -= l;
+            }
+        }
+
+        /**
+         * Hand off the full buffer up to its last line break, keeping the rest.
+         */
+        private void cut() throws IOException {
+            int end = mCount;
+            while (end > 0 && mBuffer[end - 1] != '\n') {
+                end--;
+            }
+            if (end == 0) {
+                // a single line longer than a chunk, split it between two characters
+                end = mCount - 1;
+                while (end > 1 && (mBuffer[end] & 0xc0) == 0x80) {
+                    end--;
+                }
+            }
+            final byte[] full = mBuffer;
+            mBuffer = new byte[mChunkSize];
+            mCount -= end;
+            System.arraycopy(full, end, mBuffer, 0, mCount);
+            submit(new Chunk(full, end));
+        }
+
+        private void submit(final Chunk chunk) throws IOException {
+            if (mParallelism == 1) {
+                write(run(chunk));
+                return;
+            }
+            if (mExecutor == null) {
+                mExecutor = Executors.newFixedThreadPool(mParallelism, new ThreadFactory() {
+                    private final AtomicInteger mThreads = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(r, THREAD_NAME + mThreads.incrementAndGet());
+                    }
+                });
+            }
+            mPending.add(mExecutor.submit(chunk));
+            // keep at most 2 * parallelism chunks queued, writing finished ones early
+            while (!mPending.isEmpty()
+                    && (mPending.size() >= 2 * mParallelism || mPending.getFirst().isDone())) {
+                write(mPending.removeFirst());
+            }
+        }
+
+        private Chunk run(final Chunk chunk) throws IOException {
+            try {
+                return chunk.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw error(e);
+            }
+        }
+
+        private void write(final Future<Chunk> f) throws IOException {
+            try {
+                write(f.get());
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while redacting logs");
+            } catch (ExecutionException e) {
+                throw error(e.getCause());
+            }
+        }
+
+        private void write(final Chunk chunk) throws IOException {
+            mOut.write(chunk.mData, 0, chunk.mLength);
+        }
+
+        private IOException error(final Throwable cause) {
+            final IOException e = new IOException("error redacting logs: " + cause);
+            e.initCause(cause);
+            return e;
+        }
+
+        /**
+         * Write all chunks handed off so far. Lines not yet complete are kept.
+         */
+        @Override
+        public void flush() throws IOException {
+            while (!mPending.isEmpty()) {
+                write(mPending.removeFirst());
+            }
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                if (mCount > 0) {
+                    final byte[] rest = mBuffer;
+                    mBuffer = new byte[0];
+                    submit(new Chunk(rest, mCount));
+                    mCount = 0;
+                }
+                flush();
+            } finally {
+                if (mExecutor != null) {
+                    mExecutor.shutdownNow();
+                }
+                mOut.close();
+            }
+        }
+    }
+}
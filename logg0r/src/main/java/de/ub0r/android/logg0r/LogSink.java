@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+/**
+ * Destination for log messages.
+ * <p/>
+ * Register sinks with {@link Log#setSink(LogSink)} or {@link Log#addSink(LogSink, int)}. By
+ * default, all messages go to a {@link LogcatSink}.
+ *
+ * @author flx
+ */
+public interface LogSink {
+
+    /**
+     * Write a formatted log message. Called from any thread, implementations must be thread
+     * safe.
+     *
+     * @param level Logging level, e.g. {@link Log#DEBUG}.
+     * @param tag   Used to identify the source of a log message.
+     * @param msg   The formatted message.
+     * @param tr    A Throwable for printing stack traces, may be null.
+     * @return The number of bytes written.
+     */
+    int println(int level, String tag, String msg, Throwable tr);
+}
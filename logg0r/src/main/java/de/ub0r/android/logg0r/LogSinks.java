@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+/**
+ * Immutable set of registered {@link LogSink}s.
+ * <p/>
+ * A new instance is created on every change. With exactly one sink, {@link Log} calls it
+ * directly without iterating.
+ *
+ * @author flx
+ */
+final class LogSinks {
+
+    /**
+     * The only sink, or null if there are none or several sinks.
+     */
+    final LogSink single;
+
+    /**
+     * Lowest level any sink accepts.
+     */
+    final int minLevel;
+
+    /**
+     * True, if any sink is a {@link RawLogSink}.
+     */
+    final boolean raw;
+
+    /**
+     * True, if any sink is a {@link StructuredLogSink}.
+     */
+    final boolean structured;
+
+    private final LogSink[] mSinks;
+    private final int[] mMinLevels;
+
+    private LogSinks(final LogSink[] sinks, final int[] minLevels) {
+        mSinks = sinks;
+        mMinLevels = minLevels;
+        int min = LogLevels.SUPPRESS;
+        for (int l : minLevels) {
+            min = Math.min(min, l);
+        }
+        minLevel = min;
+        single = sinks.length == 1 ? sinks[0] : null;
+        boolean r = false;
+        boolean st = false;
+        for (LogSink sink : sinks) {
+            r |= sink instanceof RawLogSink;
+            st |= sink instanceof StructuredLogSink;
+        }
+        raw = r;
+        structured = st;
+    }
+
+    /**
+     * Create a set of a single sink.
+     *
+     * @param sink     sink
+     * @param minLevel lowest level passed to the sink
+     * @return new set
+     */
+    static LogSinks of(final LogSink sink, final int minLevel) {
+        return new LogSinks(new LogSink[]{sink}, new int[]{minLevel});
+    }
+
+    /**
+     * Create a copy with an additional sink. A sink already in this set gets its level updated.
+     *
+     * @param sink     sink
+     * @param minLevel lowest level passed to the sink
+     * @return new set
+     */
+    LogSinks plus(final LogSink sink, final int minLevel) {
+        final int i = indexOf(sink);
+        if (i >= 0) {
+            final int[] minLevels = mMinLevels.clone();
+            minLevels[i] = minLevel;
+            return new LogSinks(mSinks, minLevels);
+        }
+        final int n = mSinks.length;
+        final LogSink[] sinks = new LogSink[n + 1];
+        final int[] minLevels = new int[n + 1];
+        System.arraycopy(mSinks, 0, sinks, 0, n);
+        System.arraycopy(mMinLevels, 0, minLevels, 0, n);
+        sinks[n] = sink;
+        minLevels[n] = minLevel;
+        return new LogSinks(sinks, minLevels);
+    }
+
+    /**
+     * Create a copy without a sink.
+     *
+     * @param sink sink
+     * @return new set, or this if sink is not part of this set
+     */
+    LogSinks minus(final LogSink sink) {
+        final int i = indexOf(sink);
+        if (i < 0) {
+            return this;
+        }
+        final int n = mSinks.length - 1;
+        final LogSink[] sinks = new LogSink[n];
+        final int[] minLevels = new int[n];
+        System.arraycopy(mSinks, 0, sinks, 0, i);
+        System.arraycopy(mSinks, i + 1, sinks, i, n - i);
+        System.arraycopy(mMinLevels, 0, minLevels, 0, i);
+        System.arraycopy(mMinLevels, i + 1, minLevels, i, n - i);
+        return new LogSinks(sinks, minLevels);
+    }
+
+    private int indexOf(final LogSink sink) {
+        for (int i = 0; i < mSinks.length; i++) {
+            if (mSinks[i] == sink) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pass a message to all sinks accepting its level.
+     *
+     * @return max number of bytes written by any sink
+     */
+    int println(final int level, final String tag, final String msg, final Throwable tr) {
+        final LogSink[] sinks = mSinks;
+        final int[] minLevels = mMinLevels;
+        int ret = 0;
+        for (int i = 0; i < sinks.length; i++) {
+            if (level >= minLevels[i]) {
+                ret = Math.max(ret, sinks[i].println(level, tag, msg, tr));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Pass an unformatted message to all sinks accepting its level. The message is formatted
+     * at most once, and only if any sink is no {@link RawLogSink}.
+     *
+     * @return max number of bytes written by any sink
+     */
+    int println(final int level, final String tag, final String msg, final Object[] args,
+            final int count, final Throwable tr) {
+        final LogSink[] sinks = mSinks;
+        final int[] minLevels = mMinLevels;
+        String formatted = null;
+        int ret = 0;
+        for (int i = 0; i < sinks.length; i++) {
+            if (level < minLevels[i]) {
+                continue;
+            }
+            final LogSink sink = sinks[i];
+            final int r;
+            if (sink instanceof RawLogSink) {
+                r = ((RawLogSink) sink).println(level, tag, msg, args, count, tr);
+            } else {
+                if (formatted == null) {
+                    formatted = LogTemplate.of(msg).format(args, count);
+                }
+                r = sink.println(level, tag, formatted, tr);
+            }
+            ret = Math.max(ret, r);
+        }
+        return ret;
+    }
+
+    /**
+     * Pass a message with structured fields to all sinks accepting its level. Fields are
+     * appended to the message at most once, and only if any sink is no
+     * {@link StructuredLogSink}.
+     *
+     * @return max number of bytes written by any sink
+     */
+    int println(final int level, final String tag, final String msg, final LogFields fields,
+            final Throwable tr) {
+        final LogSink[] sinks = mSinks;
+        final int[] minLevels = mMinLevels;
+        String formatted = null;
+        int ret = 0;
+        for (int i = 0; i < sinks.length; i++) {
+            if (level < minLevels[i]) {
+                continue;
+            }
+            final LogSink sink = sinks[i];
+            final int r;
+            if (sink instanceof StructuredLogSink) {
+                r = ((StructuredLogSink) sink).println(level, tag, msg, fields, tr);
+            } else {
+                if (formatted == null) {
+                    formatted = LogFormat.format(msg, fields);
+                }
+                r = sink.println(level, tag, formatted, tr);
+            }
+            ret = Math.max(ret, r);
+        }
+        return ret;
+    }
+}
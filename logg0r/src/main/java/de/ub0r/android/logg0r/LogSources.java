@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Logs to collect and stream helpers shared by {@link LogCollector} and {@link LogUploader}.
+ * <p/>
+ * Nothing in here depends on Android classes, it is compiled into the JVM benchmarks as well.
+ *
+ * @author flx
+ */
+final class LogSources {
+
+    private static final String TAG = "LogSources";
+
+    private static final String[] LOGCAT_COMMAND = {"logcat", "-d", "-v", "time"};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives the number of bytes read so far.
+     */
+    interface Progress {
+
+        /**
+         * Called while collecting logs.
+         *
+         * @param bytes number of bytes read so far
+         */
+        void onProgress(long bytes);
+    }
+
+    /**
+     * Logs to collect.
+     */
+    interface Source {
+
+        /**
+         * Write logs.
+         *
+         * @param os       stream to write to
+         * @param progress called with the number of bytes read so far; may be null
+         * @throws IOException if reading or writing logs fails
+         */
+        void writeTo(OutputStream os, Progress progress) throws IOException;
+    }
+
+    /**
+     * Starts processes with {@link Runtime#exec(String[])}.
+     */
+    static final LogcatLauncher RUNTIME_LAUNCHER = new LogcatLauncher() {
+        @Override
+        public InputStream launch(final String[] command) throws IOException {
+            final Process p = Runtime.getRuntime().exec(command);
+            return new FilterInputStream(p.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        p.destroy();
+                    }
+                }
+            };
+        }
+    };
+
+    private static volatile LogcatLauncher sLauncher = RUNTIME_LAUNCHER;
+
+    /**
+     * Device logs read from logcat.
+     */
+    static final Source LOGCAT = new Source() {
+        @Override
+        public void writeTo(final OutputStream os, final Progress progress) throws IOException {
+            final InputStream is = sLauncher.launch(LOGCAT_COMMAND);
+            try {
+                copy(is, os, progress);
+                writeStats(os);
+            } finally {
+                close(is);
+            }
+        }
+    };
+
+    /**
+     * Messages kept by {@link Log#startFlightRecorder(int)}.
+     */
+    static final Source FLIGHT_RECORDER = new Source() {
+        @Override
+        public void writeTo(final OutputStream os, final Progress progress) throws IOException {
+            final FlightRecorder recorder = Log.getFlightRecorder();
+            if (recorder == null) {
+                throw new IOException("flight recorder not started");
+            }
+            final Writer w = new OutputStreamWriter(os, "UTF-8");
+            recorder.dump(w);
+            w.flush();
+            writeStats(os);
+        }
+    };
+
+    private LogSources() {
+        // hide constructor
+    }
+
+    /**
+     * @return launcher used to start logcat
+     */
+    static LogcatLauncher getLauncher() {
+        return sLauncher;
+    }
+
+    /**
+     * @param launcher launcher used to start logcat, null to start logcat as a process
+     */
+    static void setLauncher(final LogcatLauncher launcher) {
+        sLauncher = launcher == null ? RUNTIME_LAUNCHER : launcher;
+    }
+
+    /**
+     * Append the counters kept by {@link Log#startStats(int)}, if any.
+     *
+     * @param os stream to write to
+     * @throws IOException if writing fails
+     */
+    static void writeStats(final OutputStream os) throws IOException {
+        final LogStats stats = Log.getStats();
+        if (stats == null) {
+            return;
+        }
+        final Writer w = new OutputStreamWriter(os, "UTF-8");
+        w.write("\n");
+        stats.dump(w);
+        w.flush();
+    }
+
+    /**
+     * Copy a stream with a single large buffer.
+     *
+     * @param is       source
+     * @param os       destination
+     * @param progress called with the number of bytes copied so far; may be null
+     * @return number of bytes copied
+     * @throws IOException if reading or writing fails
+     */
+    static long copy(final InputStream is, final OutputStream os, final Progress progress)
+            throws IOException {
+        final ReadableByteChannel in = Channels.newChannel(is);
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        final byte[] b = buf.array();
+        long total = 0;
+        while (in.read(buf) >= 0) {
+            // fill the buffer before writing it, logcat delivers small chunks
+            if (buf.hasRemaining()) {
+                continue;
+            }
+            os.write(b, 0, buf.position());
+            total += buf.position();
+            buf.clear();
+            if (progress != null) {
+                progress.onProgress(total);
+            }
+        }
+        if (buf.position() > 0) {
+            os.write(b, 0, buf.position());
+            total += buf.position();
+            if (progress != null) {
+                progress.onProgress(total);
+            }
+        }
+        return total;
+    }
+
+    static void close(final Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                Log.w(TAG, "error closing stream", e);
+            }
+        }
+    }
+}
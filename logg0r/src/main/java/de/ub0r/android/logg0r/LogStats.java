@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the counters kept by {@link Log#startStats(int)}.
+ * <p/>
+ * Records are counted when they are passed to the sinks, calls below a tag's level are counted as
+ * dropped. Use {@link #dump(Writer)} for a human readable report; it is attached to the files
+ * written by {@link LogCollector}.
+ *
+ * @author flx
+ */
+public final class LogStats {
+
+    private final long mStart;
+    private final long mTime;
+    private final long[] mRecords;
+    private final long[] mDropped;
+    private final long mChars;
+    private final long mThrowables;
+    private final long mFormatFailures;
+    private final Map<String, Long> mTagRecords;
+    private final Map<String, Long> mTagChars;
+    private final long[] mLatency;
+
+    LogStats(final long start, final long time, final long[] records, final long[] dropped,
+            final long chars, final long throwables, final long formatFailures,
+            final Map<String, Long> tagRecords, final Map<String, Long> tagChars,
+            final long[] latency) {
+        mStart = start;
+        mTime = time;
+        mRecords = records;
+        mDropped = dropped;
+        mChars = chars;
+        mThrowables = throwables;
+        mFormatFailures = formatFailures;
+        mTagRecords = Collections.unmodifiableMap(tagRecords);
+        mTagChars = Collections.unmodifiableMap(tagChars);
+        mLatency = latency;
+    }
+
+    /**
+     * @return time in milliseconds the counters were started at
+     */
+    public long getStartTime() {
+        return mStart;
+    }
+
+    /**
+     * @return time in milliseconds this snapshot was taken at
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    private static long get(final long[] counters, final int level) {
+        return level >= 0 && level < counters.length ? counters[level] : 0L;
+    }
+
+    private static long sum(final long[] counters) {
+        long sum = 0;
+        for (long c : counters) {
+            sum += c;
+        }
+        return sum;
+    }
+
+    /**
+     * @param level log level
+     * @return number of records written at the given level
+     */
+    public long getRecords(final int level) {
+        return get(mRecords, level);
+    }
+
+    /**
+     * @return number of records written at any level
+     */
+    public long getRecords() {
+        return sum(mRecords);
+    }
+
+    /**
+     * @param level log level
+     * @return number of calls dropped because the given level is disabled for their tag
+     */
+    public long getDropped(final int level) {
+        return get(mDropped, level);
+    }
+
+    /**
+     * @return number of calls dropped because their level is disabled
+     */
+    public long getDropped() {
+        return sum(mDropped);
+    }
+
+    /**
+     * @return number of characters of all messages written
+     */
+    public long getChars() {
+        return mChars;
+    }
+
+    /**
+     * @return number of records written with a throwable
+     */
+    public long getThrowables() {
+        return mThrowables;
+    }
+
+    /**
+     * @return number of messages not matching their format, their arguments got concatenated
+     */
+    public long getFormatFailures() {
+        return mFormatFailures;
+    }
+
+    /**
+     * Get records written per tag. Tags beyond the first few hundred are summed up as
+     * "(other)".
+     *
+     * @return unmodifiable map of tag to number of records
+     */
+    public Map<String, Long> getTagRecords() {
+        return mTagRecords;
+    }
+
+    /**
+     * Get characters written per tag.
+     *
+     * @return unmodifiable map of tag to number of characters
+     */
+    public Map<String, Long> getTagChars() {
+        return mTagChars;
+    }
+
+    /**
+     * Get the histogram of sampled sink write times. Bucket i counts writes taking less than 2^i
+     * nanoseconds, but at least 2^(i-1). The last bucket counts all slower writes.
+     *
+     * @return copy of the histogram, all zero if sink writes are not timed
+     */
+    public long[] getLatencyHistogram() {
+        final long[] h = new long[mLatency.length];
+        System.arraycopy(mLatency, 0, h, 0, h.length);
+        return h;
+    }
+
+    /**
+     * @return number of timed sink writes
+     */
+    public long getLatencySamples() {
+        return sum(mLatency);
+    }
+
+    /**
+     * Get an upper bound of the sink write time a given fraction of timed writes stayed below.
+     *
+     * @param p fraction between 0 and 1, e.g. 0.99
+     * @return nanoseconds, rounded up to the next power of two; -1 if no writes were timed
+     */
+    public long getLatencyPercentile(final double p) {
+        if (p < 0 || p > 1) {
+            throw new IllegalArgumentException("Invalid percentile: " + p);
+        }
+        final long samples = getLatencySamples();
+        if (samples == 0) {
+            return -1;
+        }
+        final long target = Math.max(1L, (long) Math.ceil(samples * p));
+        long n = 0;
+        for (int i = 0; i < mLatency.length; i++) {
+            n += mLatency[i];
+            if (n >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (mLatency.length - 1);
+    }
+
+    /**
+     * Write a human readable report.
+     *
+     * @param out writer
+     * @throws IOException if writing fails
+     */
+    public void dump(final Writer out) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("logg0r stats for ").append(mTime - mStart).append(" ms\n");
+        sb.append("records:");
+        appendLevels(sb, mRecords);
+        sb.append("\ndropped by level:");
+        appendLevels(sb, mDropped);
+        sb.append("\nchars: ").append(mChars);
+        sb.append("\nthrowables: ").append(mThrowables);
+        sb.append("\nformat failures: ").append(mFormatFailures);
+        final long samples = getLatencySamples();
+        if (samples > 0) {
+            sb.append("\nsink latency (").append(samples).append(" samples): p50 < ")
+                    .append(getLatencyPercentile(0.5)).append(" ns, p90 < ")
+                    .append(getLatencyPercentile(0.9)).append(" ns, p99 < ")
+                    .append(getLatencyPercentile(0.99)).append(" ns");
+        }
+        sb.append("\ntags by records:\n");
+        final List<Map.Entry<String, Long>> tags
+                = new ArrayList<Map.Entry<String, Long>>(mTagRecords.entrySet());
+        Collections.sort(tags, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> lhs,
+                    final Map.Entry<String, Long> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+        for (Map.Entry<String, Long> e : tags) {
+            final Long chars = mTagChars.get(e.getKey());
+            sb.append("  ").append(e.getKey()).append(": ").append(e.getValue())
+                    .append(" records, ").append(chars == null ? 0L : chars).append(" chars\n");
+        }
+        out.write(sb.toString());
+    }
+
+    private static void appendLevels(final StringBuilder sb, final long[] counters) {
+        for (int level = Log.VERBOSE; level <= Log.ASSERT; level++) {
+            sb.append(' ').append(LogFormat.levelChar(level)).append('=')
+                    .append(get(counters, level));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters behind {@link LogStats}.
+ * <p/>
+ * Global counters are striped to keep concurrent loggers from contending. Per tag counters are
+ * plain atomics to keep their memory footprint small, at most {@link #MAX_TAGS} tags are tracked
+ * individually.
+ *
+ * @author flx
+ */
+final class LogStatsRecorder {
+
+    /**
+     * Maximum number of tags counted individually, others are summed up in {@link #OTHER_TAGS}.
+     */
+    static final int MAX_TAGS = 256;
+
+    static final String OTHER_TAGS = "(other)";
+
+    /**
+     * Bucket i counts sink writes taking less than 2^i nanoseconds.
+     */
+    static final int LATENCY_BUCKETS = 40;
+
+    private static final int LEVELS = Log.ASSERT + 1;
+
+    private static final int TAG_RECORDS = 0;
+    private static final int TAG_CHARS = 1;
+
+    private final long mStart = System.currentTimeMillis();
+    private final int mSampleInterval;
+
+    private final StripedCounter[] mRecords = new StripedCounter[LEVELS];
+    private final StripedCounter[] mDropped = new StripedCounter[LEVELS];
+    private final StripedCounter mChars = new StripedCounter();
+    private final StripedCounter mThrowables = new StripedCounter();
+    private final StripedCounter mFormatFailures = new StripedCounter();
+    private final ConcurrentHashMap<String, AtomicLongArray> mTags
+            = new ConcurrentHashMap<String, AtomicLongArray>();
+    private final AtomicLongArray mLatency = new AtomicLongArray(LATENCY_BUCKETS);
+
+    /**
+     * Updated without synchronization, lost updates just skew the sampling a little.
+     */
+    private int mSampleCounter = 0;
+
+    /**
+     * Create a recorder.
+     *
+     * @param sampleInterval time every n-th sink write, 0 to not time sink writes at all
+     */
+    LogStatsRecorder(final int sampleInterval) {
+        if (sampleInterval < 0) {
+            throw new IllegalArgumentException("Invalid sample interval: " + sampleInterval);
+        }
+        mSampleInterval = sampleInterval;
+        for (int i = 0; i < LEVELS; i++) {
+            mRecords[i] = new StripedCounter();
+            mDropped[i] = new StripedCounter();
+        }
+    }
+
+    /**
+     * Count a record passed to the sinks.
+     *
+     * @param level log level
+     * @param tag   tag
+     * @param msg   message
+     * @param tr    throwable, may be null
+     */
+    void record(final int level, final String tag, final String msg, final Throwable tr) {
+        if (level >= 0 && level < LEVELS) {
+            mRecords[level].increment();
+        }
+        final int chars = msg == null ? 0 : msg.length();
+        mChars.add(chars);
+        if (tr != null) {
+            mThrowables.increment();
+        }
+        final AtomicLongArray t = tag(tag);
+        t.incrementAndGet(TAG_RECORDS);
+        t.addAndGet(TAG_CHARS, chars);
+    }
+
+    private AtomicLongArray tag(final String tag) {
+        final String key = String.valueOf(tag);
+        AtomicLongArray t = mTags.get(key);
+        if (t == null) {
+            final String k = mTags.size() < MAX_TAGS ? key : OTHER_TAGS;
+            t = mTags.get(k);
+            if (t == null) {
+                t = new AtomicLongArray(2);
+                final AtomicLongArray old = mTags.putIfAbsent(k, t);
+                if (old != null) {
+                    t = old;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Count a call dropped because its level is disabled.
+     *
+     * @param level log level
+     */
+    void dropped(final int level) {
+        if (level >= 0 && level < LEVELS) {
+            mDropped[level].increment();
+        }
+    }
+
+    /**
+     * Count a message not matching its format, arguments got concatenated instead.
+     */
+    void formatFailure() {
+        mFormatFailures.increment();
+    }
+
+    /**
+     * Decide whether to time the next sink write.
+     *
+     * @return true, if {@link #latency(long)} should be called for the next write
+     */
+    boolean sample() {
+        final int n = mSampleInterval;
+        return n > 0 && (++mSampleCounter & Integer.MAX_VALUE) % n == 0;
+    }
+
+    /**
+     * Record the time spent in the sinks.
+     *
+     * @param nanos duration of the sink write
+     */
+    void latency(final long nanos) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0L, nanos));
+        mLatency.incrementAndGet(Math.min(bucket, LATENCY_BUCKETS - 1));
+    }
+
+    /**
+     * Take a snapshot of all counters.
+     *
+     * @return snapshot
+     */
+    LogStats snapshot() {
+        final long[] records = new long[LEVELS];
+        final long[] dropped = new long[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            records[i] = mRecords[i].sum();
+            dropped[i] = mDropped[i].sum();
+        }
+        final Map<String, Long> tagRecords = new HashMap<String, Long>();
+        final Map<String, Long> tagChars = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLongArray> e : mTags.entrySet()) {
+            tagRecords.put(e.getKey(), e.getValue().get(TAG_RECORDS));
+            tagChars.put(e.getKey(), e.getValue().get(TAG_CHARS));
+        }
+        final long[] latency = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latency[i] = mLatency.get(i);
+        }
+        return new LogStats(mStart, System.currentTimeMillis(), records, dropped, mChars.sum(),
+                mThrowables.sum(), mFormatFailures.sum(), tagRecords, tagChars, latency);
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.math.BigInteger;
+import java.util.DuplicateFormatFlagsException;
+import java.util.FormatFlagsConversionMismatchException;
+import java.util.Formattable;
+import java.util.IllegalFormatException;
+import java.util.IllegalFormatFlagsException;
+import java.util.IllegalFormatPrecisionException;
+import java.util.IllegalFormatWidthException;
+import java.util.MissingFormatWidthException;
+import java.util.UnknownFormatConversionException;
+import java.util.UnknownFormatFlagsException;
+
+/**
+ * A log message parsed into literals and placeholders.
+ * <p/>
+ * Each distinct message string is parsed once. Parsed templates are kept in a small cache keyed
+ * by the identity of the message string, which works well for the string constants passed to
+ * {@link Log}. Plain {@code %s} and {@code %d} placeholders are rendered directly, anything more
+ * sophisticated is handed to {@link String#format(String, Object...)}. Messages which are no
+ * format strings at all get their arguments concatenated, just like before.
+ *
+ * @author flx
+ */
+final class LogTemplate {
+
+    /**
+     * Message does not contain any '%', concatenate arguments.
+     */
+    private static final int KIND_PLAIN = 0;
+
+    /**
+     * Message contains '%s' and '%d' placeholders only.
+     */
+    private static final int KIND_SIMPLE = 1;
+
+    /**
+     * Message contains more complex placeholders, use {@link String#format(String, Object...)}.
+     */
+    private static final int KIND_COMPLEX = 2;
+
+    /**
+     * Message is no valid format string, concatenate arguments.
+     */
+    private static final int KIND_MALFORMED = 3;
+
+    /**
+     * Single primitive argument of type int.
+     */
+    static final int ARG_INT = 0;
+
+    /**
+     * Single primitive argument of type long.
+     */
+    static final int ARG_LONG = 1;
+
+    /**
+     * Single primitive argument of type float.
+     */
+    static final int ARG_FLOAT = 2;
+
+    /**
+     * Single primitive argument of type double.
+     */
+    static final int ARG_DOUBLE = 3;
+
+    /**
+     * Single primitive argument of type boolean.
+     */
+    static final int ARG_BOOLEAN = 4;
+
+    /**
+     * Single primitive argument of type char.
+     */
+    static final int ARG_CHAR = 5;
+
+    /**
+     * Single argument gets concatenated to the message.
+     */
+    private static final int MODE_CONCAT = 0;
+
+    /**
+     * Single argument replaces the template's only placeholder.
+     */
+    private static final int MODE_PLACEHOLDER = 1;
+
+    /**
+     * Template has no placeholders, single argument is ignored.
+     */
+    private static final int MODE_LITERAL = 2;
+
+    /**
+     * Arguments match the template's plain placeholders.
+     */
+    private static final int MATCH_SIMPLE = 0;
+
+    /**
+     * Arguments don't match the template's placeholders, concatenate them.
+     */
+    private static final int MATCH_NONE = 1;
+
+    /**
+     * A {@link Formattable} argument under '%s', use {@link String#format(String, Object...)}.
+     */
+    private static final int MATCH_COMPLEX = 2;
+
+    /**
+     * Number of cached templates, must be a power of two.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * Builders growing beyond this capacity are not kept for reuse.
+     */
+    private static final int MAX_BUILDER_CAPACITY = 4096;
+
+    /**
+     * Conversions known by {@link java.util.Formatter}.
+     */
+    private static final String CONVERSIONS = "bBhHsScCdoxXeEfgGaAtT%n";
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    /**
+     * Cached templates. Races are harmless, a template is parsed again in the worst case.
+     */
+    private static final LogTemplate[] sCache = new LogTemplate[CACHE_SIZE];
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>();
+
+    private final String mSource;
+    /**
+     * Not final: a complex template turns malformed when formatting fails because of the template
+     * itself. Volatile, templates are shared between threads through {@link #sCache}. Races are
+     * harmless, another call may fail once more.
+     */
+    private volatile int mKind;
+    private final String[] mLiterals;
+    private final char[] mConversions;
+
+    private LogTemplate(final String source, final int kind, final String[] literals,
+            final char[] conversions) {
+        mSource = source;
+        mKind = kind;
+        mLiterals = literals;
+        mConversions = conversions;
+    }
+
+    /**
+     * Get the parsed template for a message.
+     *
+     * @param msg message
+     * @return parsed template
+     */
+    static LogTemplate of(final String msg) {
+        final int i = System.identityHashCode(msg) & (CACHE_SIZE - 1);
+        LogTemplate t = sCache[i];
+        if (t == null || t.mSource != msg) {
+            t = parse(msg);
+            sCache[i] = t;
+        }
+        return t;
+    }
+
+    /**
+     * Get the message this template was parsed from.
+     *
+     * @return message
+     */
+    String getSource() {
+        return mSource;
+    }
+
+    /**
+     * Parse a message.
+     *
+     * @param msg message
+     * @return parsed template
+     */
+    static LogTemplate parse(final String msg) {
+        if (msg == null || msg.indexOf('%') < 0) {
+            return new LogTemplate(msg, KIND_PLAIN, null, null);
+        }
+
+        final int length = msg.length();
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (msg.charAt(i) == '%') {
+                if (i + 1 == length) {
+                    return new LogTemplate(msg, KIND_MALFORMED, null, null);
+                }
+                final char c = msg.charAt(++i);
+                if (c == 's' || c == 'd') {
+                    count++;
+                } else if (c != '%' && c != 'n') {
+                    if (Character.isLetter(c) && CONVERSIONS.indexOf(c) < 0) {
+                        return new LogTemplate(msg, KIND_MALFORMED, null, null);
+                    }
+                    return new LogTemplate(msg, KIND_COMPLEX, null, null);
+                }
+            }
+        }
+
+        final String[] literals = new String[count + 1];
+        final char[] conversions = new char[count];
+        final StringBuilder sb = new StringBuilder(length);
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = msg.charAt(i);
+            if (c != '%') {
+                sb.append(c);
+                continue;
+            }
+            final char conversion = msg.charAt(++i);
+            if (conversion == '%') {
+                sb.append('%');
+            } else if (conversion == 'n') {
+                sb.append(LINE_SEPARATOR);
+            } else {
+                literals[n] = sb.toString();
+                conversions[n] = conversion;
+                n++;
+                sb.setLength(0);
+            }
+        }
+        literals[n] = sb.toString();
+        return new LogTemplate(msg, KIND_SIMPLE, literals, conversions);
+    }
+
+    /**
+     * Format arguments into this template.
+     *
+     * @param args  arguments
+     * @param count number of arguments to use, starting at index 0
+     * @return formatted message
+     */
+    String format(final Object[] args, final int count) {
+        final int kind = mKind;
+        if (kind == KIND_COMPLEX) {
+            return formatComplex(args, count);
+        }
+        final int match = kind == KIND_SIMPLE ? match(args, count) : MATCH_NONE;
+        if (match == MATCH_COMPLEX) {
+            return formatComplex(args, count);
+        }
+        if (match == MATCH_NONE && kind != KIND_PLAIN) {
+            Log.countFormatFailure();
+        }
+        final StringBuilder sb = acquireBuilder();
+        try {
+            if (match == MATCH_SIMPLE) {
+                appendSimple(sb, args);
+            } else {
+                appendConcat(sb, args, count);
+            }
+            return sb.toString();
+        } finally {
+            releaseBuilder(sb);
+        }
+    }
+
+    /**
+     * Format a single argument into this template without allocating an argument array.
+     *
+     * @param arg argument
+     * @return formatted message
+     */
+    String format(final Object arg) {
+        final int kind = mKind;
+        if (kind == KIND_COMPLEX || (arg instanceof Formattable && kind == KIND_SIMPLE)) {
+            return formatComplex(new Object[]{arg}, 1);
+        }
+        final int mode = mode(arg == null || arg instanceof Integer || arg instanceof Long
+                || arg instanceof Short || arg instanceof Byte || arg instanceof BigInteger);
+        final StringBuilder sb = acquireBuilder();
+        try {
+            appendHead(sb, mode);
+            if (mode != MODE_LITERAL) {
+                sb.append(arg);
+            }
+            appendTail(sb, mode);
+            return sb.toString();
+        } finally {
+            releaseBuilder(sb);
+        }
+    }
+
+    /**
+     * Format a single primitive argument into this template without boxing it.
+     *
+     * @param type one of {@code ARG_*}
+     * @param bits the argument, encoded as described for {@link #box(int, long)}
+     * @return formatted message
+     */
+    String format(final int type, final long bits) {
+        if (mKind == KIND_COMPLEX) {
+            return formatComplex(new Object[]{box(type, bits)}, 1);
+        }
+        final int mode = mode(type == ARG_INT || type == ARG_LONG);
+        final StringBuilder sb = acquireBuilder();
+        try {
+            appendHead(sb, mode);
+            if (mode != MODE_LITERAL) {
+                appendPrimitive(sb, type, bits);
+            }
+            appendTail(sb, mode);
+            return sb.toString();
+        } finally {
+            releaseBuilder(sb);
+        }
+    }
+
+    /**
+     * Box a single primitive argument.
+     *
+     * @param type one of {@code ARG_*}
+     * @param bits ints, longs and chars as is, booleans as 0 or 1, floats and doubles as their raw
+     *             bits
+     * @return boxed argument
+     */
+    static Object box(final int type, final long bits) {
+        switch (type) {
+            case ARG_INT:
+                return (int) bits;
+            case ARG_FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case ARG_DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case ARG_BOOLEAN:
+                return bits != 0L;
+            case ARG_CHAR:
+                return (char) bits;
+            default:
+                return bits;
+        }
+    }
+
+    private static void appendPrimitive(final StringBuilder sb, final int type, final long bits) {
+        switch (type) {
+            case ARG_FLOAT:
+                sb.append(Float.intBitsToFloat((int) bits));
+                break;
+            case ARG_DOUBLE:
+                sb.append(Double.longBitsToDouble(bits));
+                break;
+            case ARG_BOOLEAN:
+                sb.append(bits != 0L);
+                break;
+            case ARG_CHAR:
+                sb.append((char) bits);
+                break;
+            default:
+                sb.append(bits);
+                break;
+        }
+    }
+
+    /**
+     * Find out how to render a single argument. Counts a format failure if the argument is
+     * concatenated to a template containing '%'.
+     *
+     * @param integral true, if argument is valid for '%d'
+     * @return one of MODE_*
+     */
+    private int mode(final boolean integral) {
+        final int kind = mKind;
+        if (kind != KIND_SIMPLE) {
+            if (kind != KIND_PLAIN) {
+                Log.countFormatFailure();
+            }
+            return MODE_CONCAT;
+        }
+        final char[] conversions = mConversions;
+        if (conversions.length == 0) {
+            return MODE_LITERAL;
+        }
+        if (conversions.length > 1 || (conversions[0] == 'd' && !integral)) {
+            Log.countFormatFailure();
+            return MODE_CONCAT;
+        }
+        return MODE_PLACEHOLDER;
+    }
+
+    private void appendHead(final StringBuilder sb, final int mode) {
+        sb.append(mode == MODE_CONCAT ? mSource : mLiterals[0]);
+    }
+
+    private void appendTail(final StringBuilder sb, final int mode) {
+        if (mode == MODE_PLACEHOLDER) {
+            sb.append(mLiterals[1]);
+        }
+    }
+
+    /**
+     * Check arguments against plain '%s' and '%d' placeholders.
+     *
+     * @return one of MATCH_*
+     */
+    private int match(final Object[] args, final int count) {
+        final char[] conversions = mConversions;
+        final int n = conversions.length;
+        if (count < n) {
+            return MATCH_NONE;
+        }
+        int match = MATCH_SIMPLE;
+        for (int i = 0; i < n; i++) {
+            final Object a = args[i];
+            if (conversions[i] == 'd') {
+                if (!(a == null || a instanceof Integer || a instanceof Long || a instanceof Short
+                        || a instanceof Byte || a instanceof BigInteger)) {
+                    return MATCH_NONE;
+                }
+            } else if (a instanceof Formattable) {
+                match = MATCH_COMPLEX;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Append plain '%s' and '%d' placeholders, arguments must match them.
+     */
+    private void appendSimple(final StringBuilder sb, final Object[] args) {
+        final int n = mConversions.length;
+        final String[] literals = mLiterals;
+        for (int i = 0; i < n; i++) {
+            sb.append(literals[i]).append(args[i]);
+        }
+        sb.append(literals[n]);
+    }
+
+    private void appendConcat(final StringBuilder sb, final Object[] args, final int count) {
+        sb.append(mSource);
+        for (int i = 0; i < count; i++) {
+            sb.append(args[i]);
+        }
+    }
+
+    private String formatComplex(final Object[] args, final int count) {
+        Object[] fargs = args;
+        if (count < args.length) {
+            fargs = new Object[count];
+            System.arraycopy(args, 0, fargs, 0, count);
+        }
+        try {
+            return String.format(mSource, fargs);
+        } catch (IllegalFormatException e) {
+            // failed, just concatenate Objects.toString()
+            Log.countFormatFailure();
+            if (isTemplateError(e)) {
+                // fails for any arguments, don't try again
+                mKind = KIND_MALFORMED;
+            }
+            final StringBuilder sb = acquireBuilder();
+            try {
+                appendConcat(sb, args, count);
+                return sb.toString();
+            } finally {
+                releaseBuilder(sb);
+            }
+        }
+    }
+
+    /**
+     * Check whether a format failure is caused by the template alone, not by the arguments.
+     *
+     * @param e failure
+     * @return true, if formatting fails for any arguments
+     */
+    private static boolean isTemplateError(final IllegalFormatException e) {
+        return e instanceof UnknownFormatConversionException
+                || e instanceof UnknownFormatFlagsException
+                || e instanceof DuplicateFormatFlagsException
+                || e instanceof IllegalFormatFlagsException
+                || e instanceof FormatFlagsConversionMismatchException
+                || e instanceof IllegalFormatPrecisionException
+                || e instanceof IllegalFormatWidthException
+                || e instanceof MissingFormatWidthException;
+    }
+
+    /**
+     * Get an empty {@link StringBuilder} for the current thread. Calls to {@link Log} from
+     * within an argument's {@code toString()} get a fresh instance.
+     *
+     * @return empty builder
+     */
+    static StringBuilder acquireBuilder() {
+        final StringBuilder sb = sBuilder.get();
+        if (sb == null) {
+            return new StringBuilder(128);
+        }
+        sBuilder.set(null);
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * Hand back a builder obtained by {@link #acquireBuilder()}.
+     *
+     * @param sb builder
+     */
+    static void releaseBuilder(final StringBuilder sb) {
+        if (sb.capacity() <= MAX_BUILDER_CAPACITY) {
+            sBuilder.set(sb);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Delivers batches of queued logs to a server, see {@link LogUploader}.
+ *
+ * @author flx
+ */
+public interface LogTransport {
+
+    /**
+     * Send a batch. Called from the uploader's thread only.
+     *
+     * @param id     id of the batch; the same batch is retried with the same id, servers should
+     *               ignore batches they have seen before
+     * @param body   the batch, one or more concatenated gzip members
+     * @param length length of the body in bytes
+     * @return a HTTP status code, 2xx if the server took the batch
+     * @throws IOException if the server could not be reached
+     */
+    int send(String id, InputStream body, long length) throws IOException;
+}
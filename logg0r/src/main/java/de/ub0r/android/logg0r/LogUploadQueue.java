@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable queue of compressed log segments for {@link LogUploader}.
+ * <p/>
+ * Every file is written to a temporary name, synced and renamed, a crash leaves either the old
+ * or the new version behind. Segments are named by a sequence number that is never reused, not
+ * even after the queue ran empty. The segments of the batch in flight are recorded before it is
+ * sent and deleted only after the server took it, a batch interrupted by a crash is sent again
+ * with the same id.
+ *
+ * @author flx
+ */
+final class LogUploadQueue {
+
+    private static final String TAG = "LogUploadQueue";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String ID_FILE = "id";
+    private static final String SEQ_FILE = "seq";
+    private static final String BATCH_FILE = "batch";
+    private static final String BUDGET_FILE = "budget";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Segments sent together.
+     */
+    static final class Batch {
+
+        private final String mId;
+        private final File[] mFiles;
+        private final long mLength;
+
+        Batch(final String id, final File[] files) {
+            mId = id;
+            mFiles = files;
+            long length = 0;
+            for (File f : files) {
+                length += f.length();
+            }
+            mLength = length;
+        }
+
+        /**
+         * @return id, the same for every try
+         */
+        String getId() {
+            return mId;
+        }
+
+        /**
+         * @return length of the body in bytes
+         */
+        long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return the segments, concatenated
+         * @throws IOException if a segment could not be opened
+         */
+        InputStream open() throws IOException {
+            final List<InputStream> streams = new ArrayList<InputStream>(mFiles.length);
+            try {
+                for (File f : mFiles) {
+                    streams.add(new FileInputStream(f));
+                }
+            } catch (IOException e) {
+                for (InputStream is : streams) {
+                    LogSources.close(is);
+                }
+                throw e;
+            }
+            return new SequenceInputStream(Collections.enumeration(streams));
+        }
+    }
+
+    private final File mDir;
+    private final long mMaxSegmentSize;
+    private final long mMaxSize;
+    private final String mId;
+
+    private long mNextSeq;
+    private long[] mBatch = new long[0];
+
+    /**
+     * Open a queue, creating it if needed. Files left behind by a crash while writing are removed.
+     *
+     * @param dir            directory holding the queue, used by nothing else
+     * @param maxSegmentSize number of bytes of logs per segment, before compression
+     * @param maxSize        size of all segments; the oldest segments are dropped beyond it
+     * @throws IOException if the queue could not be opened
+     */
+    LogUploadQueue(final File dir, final long maxSegmentSize, final long maxSize)
+            throws IOException {
+        if (maxSegmentSize <= 0 || maxSize < maxSegmentSize) {
+            throw new IllegalArgumentException("Invalid sizes: " + maxSegmentSize + "/" + maxSize);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        mDir = dir;
+        mMaxSegmentSize = maxSegmentSize;
+        mMaxSize = maxSize;
+        final File[] tmp = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File d, final String filename) {
+                return filename.endsWith(TMP_SUFFIX);
+            }
+        });
+        if (tmp != null) {
+            for (File f : tmp) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        String id = read(ID_FILE);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            write(ID_FILE, id);
+        }
+        mId = id;
+        final long[] segments = segments();
+        // never reuse a sequence number, batch ids are built from them
+        long next = segments.length == 0 ? 0 : segments[segments.length - 1] + 1;
+        final String seq = read(SEQ_FILE);
+        if (seq != null) {
+            try {
+                next = Math.max(next, Long.parseLong(seq.trim()));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "ignoring broken sequence number: ", seq);
+            }
+        }
+        mNextSeq = next;
+        // keep the batch in flight when trimming before it is sent again
+        final long[] batch = readBatch();
+        if (batch != null) {
+            mBatch = batch;
+        }
+    }
+
+    /**
+     * @return id of this queue, part of every batch id
+     */
+    String getId() {
+        return mId;
+    }
+
+    /**
+     * @return sequence numbers of all segments, oldest first
+     */
+    synchronized long[] segments() {
+        final String[] names = mDir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        final long[] seqs = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (!name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            try {
+                seqs[n] = Long.parseLong(name.substring(0, name.length()
+                        - SEGMENT_SUFFIX.length()));
+                n++;
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "ignoring ", name);
+            }
+        }
+        final long[] ret = new long[n];
+        System.arraycopy(seqs, 0, ret, 0, n);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    private File segment(final long seq) {
+        return new File(mDir, seq + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return size of all segments in bytes
+     */
+    synchronized long getSize() {
+        long size = 0;
+        for (long seq : segments()) {
+            size += segment(seq).length();
+        }
+        return size;
+    }
+
+    /**
+     * Start writing logs. The segments become visible to the uploader all at once when the stream
+     * is closed, nothing is queued if it is aborted.
+     *
+     * @return stream to write logs to
+     */
+    SegmentOutputStream open() {
+        return new SegmentOutputStream();
+    }
+
+    /**
+     * Get the batch to send next: the batch sent last if it was not acknowledged, or the oldest
+     * segments up to a total size.
+     *
+     * @param maxLength maximum length of a batch in bytes, a single larger segment is sent alone
+     * @return batch or null, if the queue is empty
+     * @throws IOException if the batch could not be recorded
+     */
+    synchronized Batch nextBatch(final long maxLength) throws IOException {
+        final long[] pending = readBatch();
+        if (pending != null) {
+            final Batch batch = batch(pending);
+            if (batch != null) {
+                return batch;
+            }
+            delete(BATCH_FILE);
+        }
+        final long[] segments = segments();
+        if (segments.length == 0) {
+            return null;
+        }
+        // segments written concurrently may show up out of order, record them one by one
+        final StringBuilder sb = new StringBuilder();
+        long length = 0;
+        int n = 0;
+        while (n < segments.length) {
+            final long l = segment(segments[n]).length();
+            if (n > 0 && length + l > maxLength) {
+                break;
+            }
+            if (n > 0) {
+                sb.append(' ');
+            }
+            sb.append(segments[n]);
+            length += l;
+            n++;
+        }
+        final long[] seqs = new long[n];
+        System.arraycopy(segments, 0, seqs, 0, n);
+        write(BATCH_FILE, sb.toString());
+        return batch(seqs);
+    }
+
+    /**
+     * Read the segments of the batch in flight.
+     *
+     * @return sequence numbers or null, if no batch is recorded
+     */
+    private long[] readBatch() {
+        final String pending = read(BATCH_FILE);
+        if (pending == null) {
+            return null;
+        }
+        try {
+            final String[] parts = pending.split(" ");
+            final long[] seqs = new long[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                seqs[i] = Long.parseLong(parts[i]);
+            }
+            return seqs;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "ignoring broken batch: ", pending);
+            delete(BATCH_FILE);
+            return null;
+        }
+    }
+
+    /**
+     * Create the batch of recorded segments still present.
+     *
+     * @return batch or null, if no segment is left
+     */
+    private Batch batch(final long[] seqs) {
+        final List<File> files = new ArrayList<File>(seqs.length);
+        for (long seq : seqs) {
+            final File f = segment(seq);
+            if (f.exists()) {
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        mBatch = seqs;
+        return new Batch(mId + "-" + seqs[0] + "-" + seqs[seqs.length - 1],
+                files.toArray(new File[files.size()]));
+    }
+
+    /**
+     * Remove a batch the server took.
+     *
+     * @param batch batch returned by {@link #nextBatch(long)}
+     */
+    synchronized void ack(final Batch batch) {
+        for (File f : batch.mFiles) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+        delete(BATCH_FILE);
+        mBatch = new long[0];
+    }
+
+    /**
+     * Read the bytes sent per day.
+     *
+     * @return day and bytes sent that day
+     */
+    synchronized long[] readBudget() {
+        final String s = read(BUDGET_FILE);
+        if (s != null) {
+            final int i = s.indexOf(' ');
+            try {
+                return new long[]{Long.parseLong(s.substring(0, i)),
+                        Long.parseLong(s.substring(i + 1))};
+            } catch (RuntimeException e) {
+                Log.w(TAG, "ignoring broken budget: ", s);
+            }
+        }
+        return new long[]{0, 0};
+    }
+
+    /**
+     * Record the bytes sent per day.
+     *
+     * @param day   day
+     * @param bytes bytes sent that day
+     * @throws IOException if the budget could not be written
+     */
+    synchronized void writeBudget(final long day, final long bytes) throws IOException {
+        write(BUDGET_FILE, day + " " + bytes);
+    }
+
+    /**
+     * Drop the oldest segments not in flight until the queue fits its size.
+     */
+    private synchronized void trim() {
+        final long[] segments = segments();
+        long size = 0;
+        for (long seq : segments) {
+            size += segment(seq).length();
+        }
+        int dropped = 0;
+        for (long seq : segments) {
+            if (size <= mMaxSize) {
+                break;
+            }
+            if (inBatch(seq)) {
+                continue;
+            }
+            final File f = segment(seq);
+            size -= f.length();
+            if (f.delete()) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            Log.w(TAG, "queue full, dropped segments: ", dropped);
+        }
+    }
+
+    private boolean inBatch(final long seq) {
+        for (long s : mBatch) {
+            if (s == seq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Take a sequence number, recording it before it is used.
+     */
+    private synchronized long nextSeq() throws IOException {
+        write(SEQ_FILE, String.valueOf(mNextSeq + 1));
+        return mNextSeq++;
+    }
+
+    /**
+     * Read a small file.
+     *
+     * @return content or null, if the file does not exist
+     */
+    private String read(final String name) {
+        final File f = new File(mDir, name);
+        if (!f.exists()) {
+            return null;
+        }
+        try {
+            final InputStream is = new FileInputStream(f);
+            try {
+                final byte[] b = new byte[(int) f.length()];
+                int n = 0;
+                int r;
+                while (n < b.length && (r = is.read(b, n, b.length - n)) >= 0) {
+                    n += r;
+                }
+                return Utf8.decode(b, 0, n);
+            } finally {
+                LogSources.close(is);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "error reading ", f, e);
+            return null;
+        }
+    }
+
+    /**
+     * Replace a small file atomically.
+     */
+    private void write(final String name, final String content) throws IOException {
+        final File tmp = new File(mDir, name + TMP_SUFFIX);
+        final FileOutputStream os = new FileOutputStream(tmp);
+        try {
+            os.write(content.getBytes("UTF-8"));
+            os.getFD().sync();
+        } finally {
+            os.close();
+        }
+        if (!tmp.renameTo(new File(mDir, name))) {
+            throw new IOException("Could not write " + name);
+        }
+    }
+
+    private void delete(final String name) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDir, name).delete();
+    }
+
+    /**
+     * Compresses logs into segments, cutting them at line breaks.
+     */
+    final class SegmentOutputStream extends OutputStream {
+
+        private final List<Long> mDone = new ArrayList<Long>();
+        private long mSeq;
+        private FileOutputStream mFile;
+        private GZIPOutputStream mGzip;
+        private long mCount;
+        private boolean mClosed;
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (mClosed) {
+                return;
+            }
+            int o = off;
+            int n = len;
+            while (n > 0) {
+                if (mGzip == null) {
+                    start();
+                }
+                int l = n;
+                boolean full = false;
+                if (mCount + n >= mMaxSegmentSize) {
+                    // cut after the first line break past the limit, or hard at twice the limit
+                    final int from = o + (int) Math.max(0, mMaxSegmentSize - mCount - 1);
+                    int nl = -1;
+                    for (int i = from; i < o + n; i++) {
+                        if (b[i] == '\n') {
+                            nl = i;
+                            break;
+                        }
+                    }
+                    if (nl >= 0) {
+                        l = nl - o + 1;
+                        full = true;
+                    } else if (mCount + n >= 2 * mMaxSegmentSize) {
+                        l = (int) (2 * mMaxSegmentSize - mCount);
+                        full = true;
+                    }
+                }
+                mGzip.write(b, o, l);
+                mCount += l;
+                o += l;
+                n -= l;
+                if (full) {
+                    finish();
+                }
+            }
+        }
+
+        private File tmp(final long seq) {
+            return new File(mDir, seq + SEGMENT_SUFFIX + TMP_SUFFIX);
+        }
+
+        private void start() throws IOException {
+            mSeq = nextSeq();
+            mFile = new FileOutputStream(tmp(mSeq));
+            mGzip = new GZIPOutputStream(mFile, BUFFER_SIZE);
+            mCount = 0;
+        }
+
+        /**
+         * Finish the current segment, keeping it hidden.
+         */
+        private void finish() throws IOException {
+            final GZIPOutputStream gzip = mGzip;
+            mGzip = null;
+            try {
+                gzip.finish();
+                mFile.getFD().sync();
+            } finally {
+                gzip.close();
+            }
+            mDone.add(mSeq);
+        }
+
+        /**
+         * Queue all segments written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            try {
+                if (mGzip != null) {
+                    finish();
+                }
+                for (long seq : mDone) {
+                    if (!tmp(seq).renameTo(segment(seq))) {
+                        throw new IOException("Could not write segment " + seq);
+                    }
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            mClosed = true;
+            trim();
+        }
+
+        /**
+         * Drop all segments written unless the stream was closed, further writes are ignored.
+         */
+        void abort() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mGzip != null) {
+                LogSources.close(mGzip);
+                mGzip = null;
+                mDone.add(mSeq);
+            }
+            for (long seq : mDone) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp(seq).delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Ships logs to a server without user interaction.
+ * <p/>
+ * Logs are compressed into segments of a durable queue on disk. A background thread sends the
+ * oldest segments in batches through a {@link LogTransport}, retrying with exponential backoff
+ * and staying within a daily budget of bytes sent. Segments are deleted only after the server
+ * took them. A batch cut short by a crash is sent again with the same id, servers drop batches
+ * they have seen before to avoid duplicates.
+ * <pre>
+ * LogUploader uploader = new LogUploader(new File(context.getFilesDir(), "logs"),
+ *         new HttpLogTransport(new URL("https://example.com/logs")));
+ * uploader.start();
+ * LogCollector.uploadLogs(uploader);
+ * </pre>
+ *
+ * @author flx
+ */
+public class LogUploader implements Runnable {
+
+    /**
+     * Default number of bytes of logs per segment, before compression.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    /**
+     * Default size of the queue on disk.
+     */
+    public static final long DEFAULT_QUEUE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default size of a batch.
+     */
+    public static final long DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    /**
+     * Default number of bytes sent per day.
+     */
+    public static final long DEFAULT_DAILY_BUDGET = 4 * 1024 * 1024;
+
+    /**
+     * Default delay before the first retry.
+     */
+    public static final long DEFAULT_MIN_BACKOFF = 30 * 1000;
+
+    /**
+     * Default maximum delay between retries.
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 60 * 60 * 1000;
+
+    private static final String TAG = "LogUploader";
+
+    private static final String THREAD_NAME = "logg0r-uploader";
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final LogUploadQueue mQueue;
+    private final LogTransport mTransport;
+
+    private volatile long mBatchSize = DEFAULT_BATCH_SIZE;
+    private volatile long mDailyBudget = DEFAULT_DAILY_BUDGET;
+    private volatile long mMinBackoff = DEFAULT_MIN_BACKOFF;
+    private volatile long mMaxBackoff = DEFAULT_MAX_BACKOFF;
+
+    private Thread mThread;
+    private boolean mRunning;
+    private boolean mWakeUp;
+
+    private long mBackoff;
+    private long mRetryAt;
+    private long mBudgetDay;
+    private long mBudgetSpent;
+
+    /**
+     * Create an uploader with default sizes. Call {@link #start()} to start sending.
+     *
+     * @param dir       directory holding the queue, used by nothing else
+     * @param transport delivers batches
+     * @throws IOException if the queue could not be opened
+     */
+    public LogUploader(final File dir, final LogTransport transport) throws IOException {
+        this(dir, transport, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Create an uploader. Call {@link #start()} to start sending.
+     *
+     * @param dir         directory holding the queue, used by nothing else
+     * @param transport   delivers batches
+     * @param segmentSize number of bytes of logs per segment, before compression
+     * @param queueSize   size of the queue on disk; the oldest segments are dropped beyond it
+     * @throws IOException if the queue could not be opened
+     */
+    public LogUploader(final File dir, final LogTransport transport, final long segmentSize,
+            final long queueSize) throws IOException {
+        mQueue = new LogUploadQueue(dir, segmentSize, queueSize);
+        mTransport = transport;
+        final long[] budget = mQueue.readBudget();
+        mBudgetDay = budget[0];
+        mBudgetSpent = budget[1];
+    }
+
+    /**
+     * @param batchSize maximum size of a batch in bytes; larger segments are sent alone
+     */
+    public void setBatchSize(final long batchSize) {
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * @param dailyBudget bytes sent per day; a batch exceeding it waits for the next day, unless
+     *                    it is the first batch of the day
+     */
+    public void setDailyBudget(final long dailyBudget) {
+        mDailyBudget = dailyBudget;
+    }
+
+    /**
+     * @param min delay before the first retry in milliseconds
+     * @param max maximum delay between retries in milliseconds
+     */
+    public void setBackoff(final long min, final long max) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("Invalid backoff: " + min + "/" + max);
+        }
+        mMinBackoff = min;
+        mMaxBackoff = max;
+    }
+
+    /**
+     * Start sending queued logs on a background thread.
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(this, THREAD_NAME);
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+    /**
+     * Stop sending, waiting for the background thread to end. Queued logs are kept.
+     */
+    public void stop() {
+        final Thread t;
+        synchronized (this) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            t = mThread;
+            mThread = null;
+            notifyAll();
+        }
+        t.interrupt();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retry right away, skipping the backoff delay.
+     */
+    public synchronized void retryNow() {
+        mRetryAt = 0;
+        wakeUp();
+    }
+
+    /**
+     * @return size of the queue on disk in bytes
+     */
+    public long getQueueSize() {
+        return mQueue.getSize();
+    }
+
+    /**
+     * Queue logs for sending. Blocks until they are written to the queue.
+     *
+     * @param is logs
+     * @throws IOException if the logs could not be read or queued
+     */
+    public void enqueue(final InputStream is) throws IOException {
+        final LogUploadQueue.SegmentOutputStream os = mQueue.open();
+        try {
+            final byte[] b = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(b)) >= 0) {
+                os.write(b, 0, n);
+            }
+            os.close();
+        } finally {
+            os.abort();
+        }
+        wakeUp();
+    }
+
+    /**
+     * Queue a file for sending. Blocks until it is written to the queue.
+     *
+     * @param f uncompressed logs
+     * @throws IOException if the file could not be read or queued
+     */
+    public void enqueue(final File f) throws IOException {
+        final InputStream is = new FileInputStream(f);
+        try {
+            enqueue(is);
+        } finally {
+            LogSources.close(is);
+        }
+    }
+
+    /**
+     * Queue logs for sending, scrubbing them with a redactor first.
+     *
+     * @param source   logs
+     * @param redactor redactor, may be null
+     * @throws IOException if the logs could not be read or queued
+     */
+    void enqueue(final LogSources.Source source, final LogRedactor redactor)
+            throws IOException {
+        final LogUploadQueue.SegmentOutputStream segments = mQueue.open();
+        final OutputStream os = redactor == null ? segments : redactor.wrap(segments);
+        try {
+            source.writeTo(os, null);
+            os.close();
+        } finally {
+            // no-op if closed; drops everything written if not
+            segments.abort();
+            LogSources.close(os);
+        }
+        wakeUp();
+    }
+
+    private synchronized void wakeUp() {
+        mWakeUp = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning()) {
+                try {
+                    final long now = System.currentTimeMillis();
+                    long wait;
+                    LogUploadQueue.Batch batch = null;
+                    synchronized (this) {
+                        wait = mRetryAt - now;
+                    }
+                    if (wait <= 0) {
+                        batch = mQueue.nextBatch(mBatchSize);
+                        wait = batch == null ? Long.MAX_VALUE
+                                : budgetWait(batch.getLength(), now);
+                    }
+                    if (wait > 0) {
+                        sleep(wait);
+                    } else {
+                        send(batch, now);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "error reading queue", e);
+                    backoff();
+                } catch (RuntimeException e) {
+                    // e.g. a broken transport; keep the thread alive and retry later
+                    Log.e(TAG, "error sending logs", e);
+                    backoff();
+                }
+            }
+        } finally {
+            // allow start() to bring up a new thread if this one died anyway
+            synchronized (this) {
+                if (mThread == Thread.currentThread()) {
+                    mRunning = false;
+                    mThread = null;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    private synchronized void sleep(final long millis) {
+        if (!mWakeUp && mRunning) {
+            try {
+                wait(millis == Long.MAX_VALUE ? 0 : millis);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+        mWakeUp = false;
+    }
+
+    /**
+     * @return milliseconds until a batch of this size may be sent
+     */
+    private synchronized long budgetWait(final long length, final long now) {
+        final long day = now / MILLIS_PER_DAY;
+        if (day != mBudgetDay) {
+            mBudgetDay = day;
+            mBudgetSpent = 0;
+        }
+        if (mBudgetSpent == 0 || mBudgetSpent + length <= mDailyBudget) {
+            return 0;
+        }
+        return (day + 1) * MILLIS_PER_DAY - now;
+    }
+
+    private void send(final LogUploadQueue.Batch batch, final long now) throws IOException {
+        final int status;
+        final InputStream body = batch.open();
+        try {
+            status = mTransport.send(batch.getId(), body, batch.getLength());
+        } catch (IOException e) {
+            Log.w(TAG, "error sending batch ", batch.getId(), ": ", e);
+            backoff();
+            return;
+        } finally {
+            LogSources.close(body);
+        }
+        if (status < 200 || status >= 300) {
+            Log.w(TAG, "batch ", batch.getId(), " rejected: ", status);
+            backoff();
+            return;
+        }
+        mQueue.ack(batch);
+        final long day;
+        final long spent;
+        synchronized (this) {
+            mBackoff = 0;
+            mRetryAt = 0;
+            mBudgetSpent += batch.getLength();
+            day = mBudgetDay;
+            spent = mBudgetSpent;
+        }
+        mQueue.writeBudget(day, spent);
+    }
+
+    private synchronized void backoff() {
+        mBackoff = mBackoff == 0 ? mMinBackoff : Math.min(mMaxBackoff, mBackoff * 2);
+        mRetryAt = System.currentTimeMillis() + mBackoff;
+    }
+}
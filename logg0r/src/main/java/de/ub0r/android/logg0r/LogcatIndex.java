@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sidecar index of an uncompressed logcat dump, answering queries by tag, level and time without
+ * reading the whole dump.
+ * <p/>
+ * The dump is split into blocks at every new minute and at least every {@link #BLOCK_SIZE} bytes.
+ * Each block stores its byte offset, its first and last minute and the levels it contains. Each
+ * tag stores the blocks it shows up in. A query reads only the blocks that may match and filters
+ * their lines with a {@link LogcatReader}.
+ * <pre>
+ * LogcatIndex index = LogcatIndex.open(file);
+ * long to = index.getLastTime();
+ * index.query(file, "Sync", Log.ERROR, to - 10 * 60 * 1000, to, visitor);
+ * </pre>
+ *
+ * @author flx
+ */
+public final class LogcatIndex {
+
+    /**
+     * Suffix of index files, appended to the name of the dump.
+     */
+    public static final String SUFFIX = ".idx";
+
+    /**
+     * Maximum size of a block in bytes.
+     */
+    public static final int BLOCK_SIZE = 16 * 1024;
+
+    private static final String TAG = "LogcatIndex";
+
+    private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+    private static final int MAGIC = 0x6c674958;
+    private static final int VERSION = 2;
+
+    /**
+     * Receives lines matching a query.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for every matching line, the reader is positioned on it.
+         *
+         * @param reader reader
+         * @return false to stop the query
+         */
+        boolean onLine(LogcatReader reader);
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+
+        int[] values;
+        int size;
+
+        IntList(final int capacity) {
+            values = new int[capacity];
+        }
+
+        void add(final int v) {
+            if (size == values.length) {
+                final int[] a = new int[size * 2];
+                System.arraycopy(values, 0, a, 0, size);
+                values = a;
+            }
+            values[size++] = v;
+        }
+
+        int last() {
+            return size == 0 ? -1 : values[size - 1];
+        }
+    }
+
+    private long mLength;
+    private long mModified;
+    private long mLastTime;
+
+    private int mBlocks;
+    private long[] mOffsets = new long[16];
+    private int[] mFirstMinutes = new int[16];
+    private int[] mLastMinutes = new int[16];
+    private byte[] mLevels = new byte[16];
+
+    private final List<String> mTags = new ArrayList<String>();
+    private final List<IntList> mTagBlocks = new ArrayList<IntList>();
+    private int[] mTagTable = new int[64];
+
+    private LogcatIndex() {
+    }
+
+    /**
+     * Load the index of a dump, building it if it is missing or outdated.
+     *
+     * @param log uncompressed logcat dump
+     * @return index
+     * @throws IOException if the dump could not be read
+     */
+    public static LogcatIndex open(final File log) throws IOException {
+        final File file = new File(log.getPath() + SUFFIX);
+        if (file.exists()) {
+            try {
+                final LogcatIndex index = read(file);
+                // a replaced dump of the same length must not reuse stale offsets
+                if (index.mLength == log.length() && index.mModified == log.lastModified()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "ignoring broken index: ", file, e);
+            }
+        }
+        final LogcatIndex index = build(log);
+        try {
+            index.write(file);
+        } catch (IOException e) {
+            Log.w(TAG, "error writing index: ", file, e);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of a dump.
+     *
+     * @param log uncompressed logcat dump
+     * @return index
+     * @throws IOException if the dump could not be read
+     */
+    public static LogcatIndex build(final File log) throws IOException {
+        // taken before reading, a dump changed meanwhile is indexed again on the next open
+        final long modified = log.lastModified();
+        final InputStream is = new FileInputStream(log);
+        try {
+            final LogcatIndex index = build(is);
+            index.mModified = modified;
+            return index;
+        } finally {
+            LogSources.close(is);
+        }
+    }
+
+    /**
+     * Build the index of a dump.
+     *
+     * @param is uncompressed logcat dump
+     * @return index
+     * @throws IOException if the dump could not be read
+     */
+    static LogcatIndex build(final InputStream is) throws IOException {
+        final CountingInputStream in = new CountingInputStream(is);
+        final LogcatReader r = new LogcatReader(in);
+        final LogcatIndex index = new LogcatIndex();
+        int block = -1;
+        int blockMinute = 0;
+        long blockOffset = 0;
+        while (r.next()) {
+            final int minute = r.getMinute();
+            final long offset = r.getOffset();
+            if (block < 0 || minute != blockMinute || offset - blockOffset >= BLOCK_SIZE) {
+                block = index.addBlock(offset, minute);
+                blockMinute = minute;
+                blockOffset = offset;
+            }
+            if (minute < index.mFirstMinutes[block]) {
+                index.mFirstMinutes[block] = minute;
+            } else if (minute > index.mLastMinutes[block]) {
+                index.mLastMinutes[block] = minute;
+            }
+            index.mLevels[block] |= 1 << r.getLevel();
+            final IntList blocks = index.mTagBlocks.get(index.tagId(r));
+            if (blocks.last() != block) {
+                blocks.add(block);
+            }
+            if (r.getTime() > index.mLastTime) {
+                index.mLastTime = r.getTime();
+            }
+        }
+        index.mLength = in.getCount();
+        return index;
+    }
+
+    private int addBlock(final long offset, final int minute) {
+        if (mBlocks == mOffsets.length) {
+            final int n = mBlocks * 2;
+            final long[] offsets = new long[n];
+            System.arraycopy(mOffsets, 0, offsets, 0, mBlocks);
+            mOffsets = offsets;
+            mFirstMinutes = grow(mFirstMinutes, n);
+            mLastMinutes = grow(mLastMinutes, n);
+            final byte[] levels = new byte[n];
+            System.arraycopy(mLevels, 0, levels, 0, mBlocks);
+            mLevels = levels;
+        }
+        mOffsets[mBlocks] = offset;
+        mFirstMinutes[mBlocks] = minute;
+        mLastMinutes[mBlocks] = minute;
+        mLevels[mBlocks] = 0;
+        return mBlocks++;
+    }
+
+    private static int[] grow(final int[] a, final int n) {
+        final int[] b = new int[n];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    /**
+     * Look up the current line's tag, adding it if new. Tags are decoded only once.
+     */
+    private int tagId(final LogcatReader r) {
+        final int hash = r.tagHash();
+        final int mask = mTagTable.length - 1;
+        int i = hash & mask;
+        int id;
+        while ((id = mTagTable[i] - 1) >= 0) {
+            if (r.isTag(mTags.get(id))) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        id = mTags.size();
+        mTags.add(r.getTag());
+        mTagBlocks.add(new IntList(4));
+        mTagTable[i] = id + 1;
+        if (mTags.size() * 2 > mTagTable.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        mTagTable = new int[mTagTable.length * 2];
+        final int mask = mTagTable.length - 1;
+        for (int id = 0; id < mTags.size(); id++) {
+            int i = hash(mTags.get(id)) & mask;
+            while (mTagTable[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            mTagTable[i] = id + 1;
+        }
+    }
+
+    /**
+     * Hash a tag like {@link LogcatReader#tagHash()} does, over its UTF-8 bytes.
+     */
+    private static int hash(final String tag) {
+        final ByteBuffer buf = ByteBuffer.allocate(Utf8.length(tag, Integer.MAX_VALUE));
+        Utf8.put(buf, tag, Integer.MAX_VALUE);
+        final byte[] b = buf.array();
+        int h = 0;
+        for (byte c : b) {
+            h = 31 * h + c;
+        }
+        return h;
+    }
+
+    /**
+     * Write the index.
+     *
+     * @param file index file
+     * @throws IOException if the file could not be written
+     */
+    public void write(final File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mLength);
+            out.writeLong(mModified);
+            out.writeLong(mLastTime);
+            out.writeInt(mBlocks);
+            for (int i = 0; i < mBlocks; i++) {
+                out.writeLong(mOffsets[i]);
+                out.writeInt(mFirstMinutes[i]);
+                out.writeInt(mLastMinutes[i]);
+                out.writeByte(mLevels[i]);
+            }
+            out.writeInt(mTags.size());
+            for (int id = 0; id < mTags.size(); id++) {
+                out.writeUTF(mTags.get(id));
+                final IntList blocks = mTagBlocks.get(id);
+                out.writeInt(blocks.size);
+                // block ids are ascending, store the gaps
+                int previous = 0;
+                for (int i = 0; i < blocks.size; i++) {
+                    writeVarInt(out, blocks.values[i] - previous);
+                    previous = blocks.values[i];
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read an index.
+     *
+     * @param file index file
+     * @return index
+     * @throws IOException if the file could not be read or is no index
+     */
+    public static LogcatIndex read(final File file) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an index: " + file);
+            }
+            final LogcatIndex index = new LogcatIndex();
+            index.mLength = in.readLong();
+            index.mModified = in.readLong();
+            index.mLastTime = in.readLong();
+            final int blocks = in.readInt();
+            for (int i = 0; i < blocks; i++) {
+                final int block = index.addBlock(in.readLong(), in.readInt());
+                index.mLastMinutes[block] = in.readInt();
+                index.mLevels[block] = in.readByte();
+            }
+            final int tags = in.readInt();
+            for (int id = 0; id < tags; id++) {
+                index.mTags.add(in.readUTF());
+                final int n = in.readInt();
+                final IntList list = new IntList(Math.max(n, 1));
+                int block = 0;
+                for (int i = 0; i < n; i++) {
+                    block += readVarInt(in);
+                    list.add(block);
+                }
+                index.mTagBlocks.add(list);
+            }
+            index.rehash();
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(final DataOutputStream out, final int v) throws IOException {
+        int rest = v;
+        while ((rest & ~0x7f) != 0) {
+            out.writeByte((rest & 0x7f) | 0x80);
+            rest >>>= 7;
+        }
+        out.writeByte(rest);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed index");
+    }
+
+    /**
+     * @return length of the indexed dump in bytes
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return time of the latest line, see {@link LogcatReader#getTime()}
+     */
+    public long getLastTime() {
+        return mLastTime;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return mBlocks;
+    }
+
+    /**
+     * Find lines by tag, level and time.
+     *
+     * @param log      dump this index was built from
+     * @param tag      tag, null for all tags
+     * @param minLevel lowest level to match
+     * @param from     earliest time to match, see {@link LogcatReader#getTime()}
+     * @param to       latest time to match
+     * @param visitor  receives matching lines, oldest first
+     * @throws IOException if the dump could not be read
+     */
+    public void query(final File log, final String tag, final int minLevel, final long from,
+            final long to, final Visitor visitor) throws IOException {
+        final IntList candidates;
+        if (tag == null) {
+            candidates = null;
+        } else {
+            final int id = mTags.indexOf(tag);
+            if (id < 0) {
+                return;
+            }
+            candidates = mTagBlocks.get(id);
+        }
+        final int levels = minLevel <= 0 ? 0xff : 0xff & ~((1 << minLevel) - 1);
+        final int fromMinute = (int) (from / MILLIS_PER_MINUTE);
+        final int toMinute = (int) (to / MILLIS_PER_MINUTE);
+        final RandomAccessFile f = new RandomAccessFile(log, "r");
+        try {
+            final BlockInputStream in = new BlockInputStream(f);
+            final LogcatReader r = new LogcatReader(in);
+            final int n = candidates == null ? mBlocks : candidates.size;
+            int i = 0;
+            while (i < n) {
+                final int first = candidates == null ? i : candidates.values[i];
+                i++;
+                if ((mLevels[first] & levels) == 0 || mLastMinutes[first] < fromMinute
+                        || mFirstMinutes[first] > toMinute) {
+                    continue;
+                }
+                // read adjacent matching blocks in one go
+                int last = first;
+                while (i < n) {
+                    final int next = candidates == null ? i : candidates.values[i];
+                    if (next != last + 1 || (mLevels[next] & levels) == 0
+                            || mLastMinutes[next] < fromMinute
+                            || mFirstMinutes[next] > toMinute) {
+                        break;
+                    }
+                    last = next;
+                    i++;
+                }
+                final long start = mOffsets[first];
+                final long end = last + 1 < mBlocks ? mOffsets[last + 1] : mLength;
+                f.seek(start);
+                in.setRemaining(end - start);
+                r.reset(in, start);
+                while (r.next()) {
+                    if (r.getLevel() >= minLevel && r.getTime() >= from && r.getTime() <= to
+                            && (tag == null || r.isTag(tag)) && !visitor.onLine(r)) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+
+    /**
+     * Reads a range of a file from its current position.
+     */
+    private static final class BlockInputStream extends InputStream {
+
+        private final RandomAccessFile mFile;
+        private long mRemaining;
+
+        BlockInputStream(final RandomAccessFile file) {
+            mFile = file;
+        }
+
+        void setRemaining(final long remaining) {
+            mRemaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int b = mFile.read();
+            if (b >= 0) {
+                mRemaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int n = mFile.read(b, off, (int) Math.min(len, mRemaining));
+            if (n > 0) {
+                mRemaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Starts logcat. Replace it to feed canned logcat output to {@link LogCollector} in tests, see
+ * {@link LogCollector#setLauncher(LogcatLauncher)}.
+ *
+ * @author flx
+ */
+public interface LogcatLauncher {
+
+    /**
+     * Start a process.
+     *
+     * @param command command and arguments, e.g. {"logcat", "-d", "-v", "time"}
+     * @return the process' output; closing it must end the process
+     * @throws IOException if starting the process fails
+     */
+    InputStream launch(String[] command) throws IOException;
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming parser for logcat's {@code -v time} and {@code -v threadtime} output.
+ * <p/>
+ * Lines are decoded in place from a fixed size buffer, the getters describe the current line
+ * only. Nothing is allocated per line unless {@link #getTag()} or {@link #getMessage()} are
+ * called, memory usage does not depend on the size of the dump. Lines longer than the buffer are
+ * cut off, lines in other formats are skipped.
+ * <pre>
+ * LogcatReader r = new LogcatReader(in);
+ * while (r.next()) {
+ *     if (r.getLevel() >= Log.ERROR &amp;&amp; r.isTag("Sync")) {
+ *         r.writeLine(out);
+ *     }
+ * }
+ * </pre>
+ * Logcat timestamps have no year, {@link #getTime()} counts milliseconds since the start of a
+ * leap year.
+ *
+ * @author flx
+ */
+public class LogcatReader {
+
+    /**
+     * Default buffer size, logcat itself truncates messages at about 4 KiB.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Length of a logcat timestamp, "MM-dd HH:mm:ss.SSS".
+     */
+    private static final int TIME_LENGTH = 18;
+
+    private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+    /**
+     * First day of each month in a leap year.
+     */
+    private static final int[] FIRST_DAY = {
+            0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335
+    };
+
+    private InputStream mIn;
+    private final byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+    private boolean mEof;
+    private long mBase;
+
+    private int mStart;
+    private int mEnd;
+    private long mOffset;
+    private int mLength;
+    private boolean mTruncated;
+    private long mTime;
+    private int mLevel;
+    private int mPid;
+    private int mTid;
+    private int mTagStart;
+    private int mTagEnd;
+    private int mMessageStart;
+
+    /**
+     * Create a reader.
+     *
+     * @param in logcat output
+     */
+    public LogcatReader(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a reader.
+     *
+     * @param in         logcat output
+     * @param bufferSize maximum length of a line in bytes, longer lines are cut off
+     */
+    public LogcatReader(final InputStream in, final int bufferSize) {
+        if (bufferSize < TIME_LENGTH + 1) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        mBuffer = new byte[bufferSize];
+        reset(in, 0);
+    }
+
+    /**
+     * Start over with another stream, keeping the buffer.
+     *
+     * @param in     logcat output
+     * @param offset offset of the stream's first byte, reported by {@link #getOffset()}
+     */
+    void reset(final InputStream in, final long offset) {
+        mIn = in;
+        mPos = 0;
+        mLimit = 0;
+        mEof = false;
+        mBase = offset;
+        mLength = 0;
+        mTruncated = false;
+    }
+
+    /**
+     * Move to the next line.
+     *
+     * @return false, if there are no more lines
+     * @throws IOException if the stream could not be read
+     */
+    public boolean next() throws IOException {
+        while (readLine()) {
+            if (parse()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the next line in the buffer, refilling it as needed.
+     */
+    private boolean readLine() throws IOException {
+        mPos += mLength;
+        mLength = 0;
+        if (mTruncated) {
+            // drop the rest of a line longer than the buffer
+            int nl;
+            while ((nl = indexOf(mPos)) < 0) {
+                mBase += mLimit;
+                mPos = 0;
+                mLimit = 0;
+                if (!fill()) {
+                    return false;
+                }
+            }
+            mPos = nl + 1;
+            mTruncated = false;
+        }
+        int nl = indexOf(mPos);
+        while (nl < 0) {
+            if (mPos > 0) {
+                System.arraycopy(mBuffer, mPos, mBuffer, 0, mLimit - mPos);
+                mBase += mPos;
+                mLimit -= mPos;
+                mPos = 0;
+            }
+            final int from = mLimit;
+            if (mLimit == mBuffer.length || !fill()) {
+                break;
+            }
+            nl = indexOf(from);
+        }
+        if (mPos == mLimit) {
+            return false;
+        }
+        mStart = mPos;
+        mOffset = mBase + mPos;
+        if (nl >= 0) {
+            mEnd = nl;
+            mLength = nl + 1 - mPos;
+        } else {
+            // last line without newline or longer than the buffer
+            mEnd = mLimit;
+            mLength = mLimit - mPos;
+            mTruncated = !mEof;
+        }
+        if (mEnd > mStart && mBuffer[mEnd - 1] == '\r') {
+            mEnd--;
+        }
+        return true;
+    }
+
+    /**
+     * Read more bytes into the buffer.
+     *
+     * @return false, if the end of the stream was reached
+     */
+    private boolean fill() throws IOException {
+        if (mEof) {
+            return false;
+        }
+        final int n = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+        if (n < 0) {
+            mEof = true;
+            return false;
+        }
+        mLimit += n;
+        return true;
+    }
+
+    private int indexOf(final int from) {
+        final byte[] b = mBuffer;
+        for (int i = from; i < mLimit; i++) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse the current line.
+     *
+     * @return false, if the line is in an unknown format
+     */
+    private boolean parse() {
+        final byte[] b = mBuffer;
+        final int start = mStart;
+        final int end = mEnd;
+        if (end - start < TIME_LENGTH + 3 || b[start + 2] != '-' || b[start + 5] != ' '
+                || b[start + 8] != ':' || b[start + 11] != ':' || b[start + 14] != '.') {
+            return false;
+        }
+        final int month = digits(start, 2);
+        final int day = digits(start + 3, 2);
+        final int hour = digits(start + 6, 2);
+        final int minute = digits(start + 9, 2);
+        final int second = digits(start + 12, 2);
+        final int millis = digits(start + 15, 3);
+        if (month < 1 || month > 12 || day < 1 || hour < 0 || minute < 0 || second < 0
+                || millis < 0) {
+            return false;
+        }
+        mTime = ((((long) (FIRST_DAY[month - 1] + day - 1) * 24 + hour) * 60 + minute) * 60
+                + second) * 1000 + millis;
+        int i = start + TIME_LENGTH;
+        if (b[i] != ' ') {
+            return false;
+        }
+        i++;
+        if (b[i + 1] == '/') {
+            // time: "D/Tag     ( 1234): message"
+            mLevel = level(b[i]);
+            mTagStart = i + 2;
+            final int close = find(')', ':', mTagStart);
+            if (close < 0) {
+                return false;
+            }
+            int open = close - 1;
+            while (open >= mTagStart && b[open] != '(') {
+                open--;
+            }
+            if (open < mTagStart) {
+                return false;
+            }
+            mPid = number(open + 1, close);
+            mTid = -1;
+            mTagEnd = trim(mTagStart, open);
+            mMessageStart = Math.min(close + 3, end);
+        } else {
+            // threadtime: " 1234  1235 D Tag     : message"
+            while (i < end && b[i] == ' ') {
+                i++;
+            }
+            int j = skipDigits(i);
+            mPid = number(i, j);
+            i = j;
+            while (i < end && b[i] == ' ') {
+                i++;
+            }
+            j = skipDigits(i);
+            mTid = number(i, j);
+            i = j;
+            if (i + 3 > end || b[i] != ' ' || b[i + 2] != ' ') {
+                return false;
+            }
+            mLevel = level(b[i + 1]);
+            mTagStart = i + 3;
+            final int colon = find(':', ' ', mTagStart);
+            if (colon < 0) {
+                return false;
+            }
+            mTagEnd = trim(mTagStart, colon);
+            mMessageStart = Math.min(colon + 2, end);
+        }
+        return mLevel > 0 && mPid >= 0;
+    }
+
+    /**
+     * Find two consecutive bytes, or the first one at the end of the line.
+     */
+    private int find(final char first, final char second, final int from) {
+        final byte[] b = mBuffer;
+        final int end = mEnd;
+        for (int i = from; i < end; i++) {
+            if (b[i] == first && (i + 1 == end || b[i + 1] == second)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int trim(final int from, final int to) {
+        int i = to;
+        while (i > from && mBuffer[i - 1] == ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    private int skipDigits(final int from) {
+        int i = from;
+        while (i < mEnd && mBuffer[i] >= '0' && mBuffer[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parse a fixed number of digits.
+     *
+     * @return value or -1
+     */
+    private int digits(final int from, final int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            final int d = mBuffer[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    /**
+     * Parse a number surrounded by spaces.
+     *
+     * @return value or -1
+     */
+    private int number(final int from, final int to) {
+        int v = 0;
+        boolean any = false;
+        for (int i = from; i < to; i++) {
+            final byte c = mBuffer[i];
+            if (c >= '0' && c <= '9') {
+                v = v * 10 + c - '0';
+                any = true;
+            } else if (c != ' ') {
+                return -1;
+            }
+        }
+        return any ? v : -1;
+    }
+
+    private static int level(final byte c) {
+        switch (c) {
+            case 'V':
+                return Log.VERBOSE;
+            case 'D':
+                return Log.DEBUG;
+            case 'I':
+                return Log.INFO;
+            case 'W':
+                return Log.WARN;
+            case 'E':
+                return Log.ERROR;
+            case 'F':
+            case 'A':
+                return Log.ASSERT;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return offset of the current line's first byte in the stream
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * @return true, if the current line was longer than the buffer and got cut off
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    /**
+     * @return milliseconds since the start of the year
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return minutes since the start of the year
+     */
+    public int getMinute() {
+        return (int) (mTime / MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * @return log level
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return process id
+     */
+    public int getPid() {
+        return mPid;
+    }
+
+    /**
+     * @return thread id, -1 for the time format
+     */
+    public int getTid() {
+        return mTid;
+    }
+
+    /**
+     * Compare the current line's tag without decoding it.
+     *
+     * @param tag tag
+     * @return true, if the tag matches
+     */
+    public boolean isTag(final String tag) {
+        final int n = tag.length();
+        if (n != mTagEnd - mTagStart) {
+            return n <= (mTagEnd - mTagStart) && tag.equals(getTag());
+        }
+        for (int i = 0; i < n; i++) {
+            final char c = tag.charAt(i);
+            if (c >= 0x80) {
+                return tag.equals(getTag());
+            }
+            if (mBuffer[mTagStart + i] != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return hash of the current line's tag, consistent with {@link #isTag(String)}
+     */
+    int tagHash() {
+        int h = 0;
+        for (int i = mTagStart; i < mTagEnd; i++) {
+            h = 31 * h + mBuffer[i];
+        }
+        return h;
+    }
+
+    /**
+     * @return tag, decoded on every call
+     */
+    public String getTag() {
+        return decode(mTagStart, mTagEnd);
+    }
+
+    /**
+     * @return message, decoded on every call
+     */
+    public String getMessage() {
+        return decode(mMessageStart, mEnd);
+    }
+
+    /**
+     * Copy the current line as is, including a trailing newline.
+     *
+     * @param os stream to write to
+     * @throws IOException if the stream could not be written
+     */
+    public void writeLine(final OutputStream os) throws IOException {
+        os.write(mBuffer, mStart, mEnd - mStart);
+        os.write('\n');
+    }
+
+    private String decode(final int from, final int to) {
+        return Utf8.decode(mBuffer, from, to - from);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import android.os.Build;
+
+/**
+ * {@link LogSink} writing to {@link android.util.Log}.
+ *
+ * @author flx
+ */
+public class LogcatSink implements LogSink {
+
+    @Override
+    public int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        switch (level) {
+            case Log.VERBOSE:
+                if (tr == null) {
+                    return android.util.Log.v(tag, msg);
+                } else {
+                    return android.util.Log.v(tag, msg, tr);
+                }
+            case Log.DEBUG:
+                if (tr == null) {
+                    return android.util.Log.d(tag, msg);
+                } else {
+                    return android.util.Log.d(tag, msg, tr);
+                }
+            case Log.INFO:
+                if (tr == null) {
+                    return android.util.Log.i(tag, msg);
+                } else {
+                    return android.util.Log.i(tag, msg, tr);
+                }
+            case Log.WARN:
+                if (tr == null) {
+                    return android.util.Log.w(tag, msg);
+                } else {
+                    return android.util.Log.w(tag, msg, tr);
+                }
+            case Log.ERROR:
+                if (tr == null) {
+                    return android.util.Log.e(tag, msg);
+                } else {
+                    return android.util.Log.e(tag, msg, tr);
+                }
+            case Log.ASSERT:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+                    if (tr == null) {
+                        return android.util.Log.wtf(tag, msg);
+                    } else {
+                        return android.util.Log.wtf(tag, msg, tr);
+                    }
+                } else {
+                    if (tr == null) {
+                        return android.util.Log.e(tag, msg);
+                    } else {
+                        return android.util.Log.e(tag, msg, tr);
+                    }
+                }
+            default:
+                throw new IllegalArgumentException("Invalid log level: " + level);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link LogSink} keeping all messages in memory as lines in logcat's brief format. Does not
+ * depend on android classes and is meant for tests.
+ *
+ * @author flx
+ */
+public class MemorySink implements LogSink {
+
+    private final ArrayList<String> mLines = new ArrayList<String>();
+
+    @Override
+    public int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final String line = LogFormat.appendBrief(new StringBuilder(), level, tag, msg, tr)
+                .toString();
+        synchronized (mLines) {
+            mLines.add(line);
+        }
+        return line.length();
+    }
+
+    /**
+     * Get all messages written so far.
+     *
+     * @return copy of all messages
+     */
+    public List<String> getLines() {
+        synchronized (mLines) {
+            return new ArrayList<String>(mLines);
+        }
+    }
+
+    /**
+     * Remove all messages.
+     */
+    public void clear() {
+        synchronized (mLines) {
+            mLines.clear();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.PrintStream;
+
+/**
+ * {@link LogSink} writing to a {@link PrintStream}, e.g. {@link System#out}. Does not depend on
+ * android classes and may be used to run code using {@link Log} on a plain JVM.
+ *
+ * @author flx
+ */
+public class PrintStreamSink implements LogSink {
+
+    private final PrintStream mOut;
+
+    /**
+     * Create a sink writing to {@link System#out}.
+     */
+    public PrintStreamSink() {
+        this(System.out);
+    }
+
+    /**
+     * Create a sink writing to a {@link PrintStream}.
+     *
+     * @param out stream to write to
+     */
+    public PrintStreamSink(final PrintStream out) {
+        mOut = out;
+    }
+
+    @Override
+    public int println(final int level, final String tag, final String msg,
+            final Throwable tr) {
+        final StringBuilder sb = LogTemplate.acquireBuilder();
+        try {
+            final String line = LogFormat.appendBrief(sb, level, tag, msg, tr).toString();
+            mOut.println(line);
+            return line.length();
+        } finally {
+            LogTemplate.releaseBuilder(sb);
+        }
+    }
+}
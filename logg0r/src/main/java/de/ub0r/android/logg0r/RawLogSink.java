@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+/**
+ * {@link LogSink} taking unformatted messages. {@link Log} passes the message template and its
+ * arguments instead of formatting them, formatting may be deferred or skipped entirely.
+ * Messages without arguments are passed to {@link #println(int, String, String, Throwable)}.
+ *
+ * @author flx
+ */
+public interface RawLogSink extends LogSink {
+
+    /**
+     * Write an unformatted log message. Called from any thread, implementations must be thread
+     * safe. Arguments must not be kept after returning, they may be modified by the caller.
+     *
+     * @param level Logging level, e.g. {@link Log#DEBUG}.
+     * @param tag   Used to identify the source of a log message.
+     * @param msg   The message template.
+     * @param args  Arguments for msg's String formatting, only the first count are valid.
+     * @param count Number of arguments.
+     * @param tr    A Throwable for printing stack traces, may be null.
+     * @return The number of bytes written.
+     */
+    int println(int level, String tag, String msg, Object[] args, int count, Throwable tr);
+}
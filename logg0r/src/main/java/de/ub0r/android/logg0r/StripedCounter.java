@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spreading concurrent updates over several cells.
+ * <p/>
+ * Each thread updates the cell picked by its id, cells are padded to separate cache lines. This
+ * keeps threads logging in parallel from fighting over a single {@link
+ * java.util.concurrent.atomic.AtomicLong}. Reading the sum is more expensive than updating it.
+ *
+ * @author flx
+ */
+final class StripedCounter {
+
+    /**
+     * Distance between two cells in longs, a cache line of 64 bytes.
+     */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES;
+
+    static {
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        int s = 1;
+        while (s < cpus * 2 && s < 64) {
+            s <<= 1;
+        }
+        STRIPES = s;
+    }
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Add to the counter.
+     *
+     * @param x value to add
+     */
+    void add(final long x) {
+        final int i = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+        mCells.getAndAdd(i, x);
+    }
+
+    /**
+     * Increment the counter.
+     */
+    void increment() {
+        add(1L);
+    }
+
+    /**
+     * Get the counter's value. Concurrent updates may or may not be included.
+     *
+     * @return sum of all cells
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
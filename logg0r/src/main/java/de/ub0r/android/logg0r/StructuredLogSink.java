@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+/**
+ * {@link LogSink} taking the structured fields of messages logged with
+ * {@link Log#at(int, String)} as they are, instead of having them appended to the message as
+ * text. All other messages are passed to {@link #println(int, String, String, Throwable)}.
+ *
+ * @author flx
+ */
+public interface StructuredLogSink extends LogSink {
+
+    /**
+     * Write a log message with structured fields. Called from any thread, implementations must be
+     * thread safe. Fields must not be kept after returning, they are reused by the caller.
+     *
+     * @param level  Logging level, e.g. {@link Log#DEBUG}.
+     * @param tag    Used to identify the source of a log message.
+     * @param msg    The message, may be null.
+     * @param fields The message's fields.
+     * @param tr     A Throwable for printing stack traces, may be null.
+     * @return The number of bytes written.
+     */
+    int println(int level, String tag, String msg, LogFields fields, Throwable tr);
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recently logged throwables to avoid rendering the same stack trace over and over.
+ * <p/>
+ * Throwables are identified by a fingerprint over the class, the shape of the message and the
+ * top stack frames of each throwable in the cause chain. Digits in messages are ignored, so
+ * "timeout after 1200ms" and "timeout after 1500ms" are the same. The first occurrence of a
+ * fingerprint gets an id, later occurrences are replaced by a short reference to it. Fingerprints
+ * are kept in a bounded LRU.
+ *
+ * @author flx
+ */
+final class ThrowableCache {
+
+    /**
+     * Number of stack frames per throwable included in the fingerprint.
+     */
+    private static final int TOP_FRAMES = 8;
+
+    /**
+     * Number of throwables in the cause chain included in the fingerprint.
+     */
+    private static final int MAX_CAUSES = 4;
+
+    /**
+     * Stands in for a repeated throwable, rendering a single line without stack trace.
+     */
+    private static final class Repeated extends Throwable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String mSummary;
+
+        Repeated(final Throwable tr, final int id, final int count) {
+            super(tr.getMessage());
+            mSummary = tr.getClass().getName() + (tr.getMessage() == null ? "" : ": "
+                    + tr.getMessage()) + " (same trace as #" + id + ", seen " + count + " times)";
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return mSummary;
+        }
+    }
+
+    /**
+     * Fingerprint to {id, count}, ordered by last access.
+     */
+    private final LinkedHashMap<Long, int[]> mEntries;
+
+    private int mNextId = 1;
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity number of fingerprints to remember
+     */
+    ThrowableCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        mEntries = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, int[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Look up a throwable, adding it if it is new.
+     *
+     * @param tr throwable
+     * @return id and number of occurrences, including this one
+     */
+    int[] lookup(final Throwable tr) {
+        final Long key = fingerprint(tr);
+        synchronized (this) {
+            int[] e = mEntries.get(key);
+            if (e == null) {
+                mMisses++;
+                e = new int[]{mNextId++, 1};
+                mEntries.put(key, e);
+            } else {
+                mHits++;
+                e[1]++;
+            }
+            return new int[]{e[0], e[1]};
+        }
+    }
+
+    /**
+     * Get the message to log with the first occurrence of a throwable.
+     *
+     * @param msg message
+     * @param id  id of the throwable
+     * @return message referencing the id
+     */
+    static String first(final String msg, final int id) {
+        return msg == null ? "[trace #" + id + "]" : msg + " [trace #" + id + "]";
+    }
+
+    /**
+     * Get a stand-in for a repeated throwable, rendering a single line.
+     *
+     * @param tr    throwable
+     * @param id    id of its first occurrence
+     * @param count number of occurrences
+     * @return throwable without stack trace
+     */
+    static Throwable repeated(final Throwable tr, final int id, final int count) {
+        return new Repeated(tr, id, count);
+    }
+
+    /**
+     * @return fraction of lookups finding a known throwable
+     */
+    synchronized double getHitRate() {
+        final long lookups = mHits + mMisses;
+        return lookups == 0 ? 0d : (double) mHits / lookups;
+    }
+
+    static long fingerprint(final Throwable tr) {
+        long h = 17;
+        Throwable t = tr;
+        for (int i = 0; i < MAX_CAUSES && t != null; i++) {
+            h = 31 * h + t.getClass().getName().hashCode();
+            h = 31 * h + shape(t.getMessage());
+            final StackTraceElement[] frames = t.getStackTrace();
+            final int n = Math.min(frames.length, TOP_FRAMES);
+            for (int j = 0; j < n; j++) {
+                h = 31 * h + frames[j].hashCode();
+            }
+            h = 31 * h + frames.length;
+            t = t.getCause();
+        }
+        return h;
+    }
+
+    /**
+     * Hash a message, treating each run of digits as a single zero.
+     */
+    private static long shape(final String msg) {
+        if (msg == null) {
+            return 0;
+        }
+        long h = 1;
+        boolean digits = false;
+        final int length = msg.length();
+        for (int i = 0; i < length; i++) {
+            final char c = msg.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits) {
+                    continue;
+                }
+                digits = true;
+                h = 31 * h + '0';
+            } else {
+                digits = false;
+                h = 31 * h + c;
+            }
+        }
+        return h;
+    }
+}
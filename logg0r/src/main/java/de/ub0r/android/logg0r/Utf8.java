@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.logg0r;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation free UTF-8 encoding into {@link ByteBuffer}s.
+ *
+ * @author flx
+ */
+final class Utf8 {
+
+    private static final String CHARSET = "UTF-8";
+
+    private Utf8() {
+        // no instances
+    }
+
+    /**
+     * Get the number of bytes needed to encode a string, capped at a maximum.
+     *
+     * @param s        string
+     * @param maxBytes maximum number of bytes
+     * @return number of bytes {@link #put(ByteBuffer, CharSequence, int)} writes
+     */
+    static int length(final CharSequence s, final int maxBytes) {
+        final int n = s.length();
+        int bytes = 0;
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            final int l;
+            if (c < 0x80) {
+                l = 1;
+            } else if (c < 0x800) {
+                l = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                l = 4;
+                i++;
+            } else {
+                l = 3;
+            }
+            if (bytes + l > maxBytes) {
+                break;
+            }
+            bytes += l;
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode a string, truncated to whole characters fitting into maxBytes.
+     *
+     * @param buf      buffer to write to
+     * @param s        string
+     * @param maxBytes maximum number of bytes
+     * @return number of bytes written
+     */
+    static int put(final ByteBuffer buf, final CharSequence s, final int maxBytes) {
+        final int n = s.length();
+        int bytes = 0;
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (bytes + 1 > maxBytes) {
+                    break;
+                }
+                buf.put((byte) c);
+                bytes += 1;
+            } else if (c < 0x800) {
+                if (bytes + 2 > maxBytes) {
+                    break;
+                }
+                buf.put((byte) (0xc0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                if (bytes + 4 > maxBytes) {
+                    break;
+                }
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf.put((byte) (0xf0 | (cp >> 18)));
+                buf.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                buf.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                buf.put((byte) (0x80 | (cp & 0x3f)));
+                bytes += 4;
+            } else {
+                if (bytes + 3 > maxBytes) {
+                    break;
+                }
+                buf.put((byte) (0xe0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode bytes.
+     *
+     * @param b      bytes
+     * @param offset offset of first byte
+     * @param length number of bytes
+     * @return decoded string
+     */
+    static String decode(final byte[] b, final int offset, final int length) {
+        try {
+            return new String(b, offset, length, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read and decode bytes.
+     *
+     * @param buf    buffer to read from
+     * @param length number of bytes
+     * @return decoded string
+     */
+    static String get(final ByteBuffer buf, final int length) {
+        final byte[] b = new byte[length];
+        buf.get(b);
+        return decode(b, 0, length);
+    }
+}
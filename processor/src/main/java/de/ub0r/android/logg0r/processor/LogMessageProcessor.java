@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2013 - 2014 Felix Bechstein
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.ub0r.android.logg0r.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates implementations of interfaces declaring {@code @LogMessage} methods.
+ * <p/>
+ * For an interface {@code SyncLog} a class {@code Logg0r_SyncLog} is generated in the same
+ * package. Each method checks the level, appends literals and parameters to a
+ * {@link StringBuilder} and passes the result to {@code Log.log(int, String, String, Throwable)}.
+ * Debug and verbose messages are built in private static helpers named {@code d_<method>} and
+ * {@code v_<method>} and passed to {@code Log.d()} and {@code Log.v()}, so ProGuard can strip
+ * them completely.
+ * Malformed formats and parameters not matching them are reported as compile errors.
+ * <p/>
+ * The annotation is read by name, so this processor does not depend on the Android library.
+ *
+ * @author flx
+ */
+@SupportedAnnotationTypes(LogMessageProcessor.ANNOTATION)
+public class LogMessageProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "de.ub0r.android.logg0r.LogMessage";
+
+    private static final String LOG = "de.ub0r.android.logg0r.Log";
+
+    private static final String LAZY_ARG = "de.ub0r.android.logg0r.LazyArg";
+
+    private static final String PREFIX = "Logg0r_";
+
+    private static final String BUILDER = "log$sb";
+
+    /**
+     * Names of the level constants in Log, indexed by level.
+     */
+    private static final String[] LEVELS = {
+            null, null, "VERBOSE", "DEBUG", "INFO", "WARN", "ERROR", "ASSERT"};
+
+    /**
+     * Expected number of characters per parameter, used to size the builder.
+     */
+    private static final int PARAMETER_SIZE = 16;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment env) {
+        final Elements elements = processingEnv.getElementUtils();
+        final TypeElement annotation = elements.getTypeElement(ANNOTATION);
+        if (annotation == null || annotations.isEmpty()) {
+            return false;
+        }
+        final Set<TypeElement> interfaces = new LinkedHashSet<TypeElement>();
+        for (Element e : env.getElementsAnnotatedWith(annotation)) {
+            final Element enclosing = e.getEnclosingElement();
+            if (e.getKind() != ElementKind.METHOD || enclosing.getKind() != ElementKind.INTERFACE) {
+                error(e, "@LogMessage is allowed on interface methods only");
+                continue;
+            }
+            interfaces.add((TypeElement) enclosing);
+        }
+        for (TypeElement type : interfaces) {
+            generate(type, annotation);
+        }
+        return true;
+    }
+
+    private void error(final Element e, final String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+    }
+
+    private void error(final Element e, final AnnotationMirror mirror, final String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e, mirror);
+    }
+
+    private static AnnotationMirror getMirror(final Element e, final TypeElement annotation) {
+        for (AnnotationMirror m : e.getAnnotationMirrors()) {
+            if (m.getAnnotationType().asElement().equals(annotation)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private Object getValue(final AnnotationMirror mirror, final String name) {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values
+                = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e
+                : values.entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generate the implementation of an interface.
+     */
+    private void generate(final TypeElement type, final TypeElement annotation) {
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "interfaces declaring @LogMessage methods must not be generic");
+            return;
+        }
+        final Elements elements = processingEnv.getElementUtils();
+        final String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        final String name = PREFIX + flatName(type);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by ").append(getClass().getName()).append(", do not edit.\n");
+        if (pkg.length() > 0) {
+            sb.append("package ").append(pkg).append(";\n");
+        }
+        sb.append("\n/**\n * Implementation of {@link ").append(type.getQualifiedName())
+                .append("}.\n */\npublic final class ").append(name).append(" implements ")
+                .append(type.getQualifiedName()).append(" {\n");
+        boolean ok = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)
+                    || method.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            final AnnotationMirror mirror = getMirror(method, annotation);
+            if (mirror == null) {
+                error(type, "method " + method.getSimpleName()
+                        + " has no @LogMessage, can't implement it");
+                ok = false;
+                continue;
+            }
+            ok &= generate(sb, type, method, mirror);
+        }
+        sb.append("}\n");
+        if (!ok) {
+            return;
+        }
+        try {
+            final String qualifiedName = pkg.length() > 0 ? pkg + "." + name : name;
+            final JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(qualifiedName, type);
+            final Writer w = file.openWriter();
+            try {
+                w.write(sb.toString());
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            error(type, "failed to write " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Name of a possibly nested type without its package, nesting separated by '_'.
+     */
+    private static String flatName(final TypeElement type) {
+        final StringBuilder sb = new StringBuilder(type.getSimpleName());
+        Element e = type.getEnclosingElement();
+        while (e != null && !(e instanceof PackageElement)) {
+            sb.insert(0, '_').insert(0, e.getSimpleName());
+            e = e.getEnclosingElement();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generate a single method.
+     *
+     * @return false, if the method is invalid
+     */
+    private boolean generate(final StringBuilder sb, final TypeElement type,
+            final ExecutableElement method, final AnnotationMirror mirror) {
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        final int level = ((Number) getValue(mirror, "level")).intValue();
+        final String format = (String) getValue(mirror, "format");
+        String tag = (String) getValue(mirror, "tag");
+        if (tag == null || tag.length() == 0) {
+            tag = type.getSimpleName().toString();
+        }
+
+        if (level < 2 || level >= LEVELS.length) {
+            error(method, mirror, "invalid level " + level + ", use one of Log's level constants");
+            return false;
+        }
+        if (method.getReturnType().getKind() != TypeKind.VOID) {
+            error(method, "@LogMessage methods must return void");
+            return false;
+        }
+        if (!method.getTypeParameters().isEmpty()) {
+            error(method, "@LogMessage methods must not be generic");
+            return false;
+        }
+        final List<Object> segments;
+        try {
+            segments = parse(format);
+        } catch (IllegalArgumentException e) {
+            error(method, mirror, "malformed format \"" + format + "\": " + e.getMessage());
+            return false;
+        }
+
+        final List<? extends VariableElement> params = method.getParameters();
+        final int placeholders = segments.size() / 2;
+        final TypeMirror throwable = elements.getTypeElement("java.lang.Throwable").asType();
+        final boolean hasThrowable = params.size() == placeholders + 1
+                && types.isAssignable(params.get(placeholders).asType(), throwable);
+        if (params.size() != placeholders && !hasThrowable) {
+            error(method, mirror, "format \"" + format + "\" has " + placeholders
+                    + " placeholders, but the method has " + params.size() + " parameters");
+            return false;
+        }
+        final TypeElement lazyArg = elements.getTypeElement(LAZY_ARG);
+        for (int i = 0; i < placeholders; i++) {
+            final char conversion = (Character) segments.get(2 * i + 1);
+            final VariableElement p = params.get(i);
+            if (conversion == 'd' && !isIntegral(p.asType())) {
+                error(p, "parameter " + p.getSimpleName() + " is no integral type, but formatted"
+                        + " with %d");
+                return false;
+            }
+        }
+
+        // signature
+        final StringBuilder signature = new StringBuilder();
+        final StringBuilder names = new StringBuilder();
+        for (int i = 0; i < params.size(); i++) {
+            final VariableElement p = params.get(i);
+            if (i > 0) {
+                signature.append(", ");
+                names.append(", ");
+            }
+            String t = p.asType().toString();
+            if (method.isVarArgs() && i == params.size() - 1 && t.endsWith("[]")) {
+                t = t.substring(0, t.length() - 2) + "...";
+            }
+            signature.append("final ").append(t).append(' ').append(p.getSimpleName());
+            names.append(p.getSimpleName());
+        }
+        sb.append("\n    @Override\n    public void ").append(method.getSimpleName()).append('(')
+                .append(signature).append(") {\n");
+        final String shortcut = level == 2 ? "v" : level == 3 ? "d" : null;
+        if (shortcut != null) {
+            // debug and verbose messages are built in a helper, which ProGuard may strip
+            final String helper = shortcut + "_" + method.getSimpleName();
+            sb.append("        ").append(helper).append('(').append(names).append(");\n    }\n")
+                    .append("\n    private static void ").append(helper).append('(')
+                    .append(signature).append(") {\n");
+        }
+
+        // body
+        final String levelConstant = LOG + "." + LEVELS[level];
+        final String tagLiteral = literal(tag);
+        sb.append("        if (!").append(LOG).append(".shouldLog(").append(tagLiteral)
+                .append(", ").append(levelConstant)
+                .append(")) {\n            return;\n        }\n");
+        final String tr = hasThrowable ? params.get(placeholders).getSimpleName().toString() : null;
+        if (placeholders == 0) {
+            appendLog(sb, levelConstant, shortcut, tagLiteral,
+                    literal((String) segments.get(0)), tr);
+            return true;
+        }
+        int capacity = 0;
+        for (int i = 0; i < segments.size(); i += 2) {
+            capacity += ((String) segments.get(i)).length();
+        }
+        capacity += placeholders * PARAMETER_SIZE;
+        sb.append("        final StringBuilder ").append(BUILDER).append(" = new StringBuilder(")
+                .append(capacity).append(");\n");
+        for (int i = 0; i < segments.size(); i++) {
+            if (i % 2 == 0) {
+                final String s = (String) segments.get(i);
+                if (s.length() > 0) {
+                    sb.append("        ").append(BUILDER).append(".append(").append(literal(s))
+                            .append(");\n");
+                }
+                continue;
+            }
+            final VariableElement p = params.get(i / 2);
+            final Name n = p.getSimpleName();
+            sb.append("        ").append(BUILDER).append(".append(");
+            if (p.asType().getKind() == TypeKind.ARRAY) {
+                sb.append("java.util.Arrays.toString(").append(n).append(')');
+            } else if (lazyArg != null && types.isAssignable(p.asType(), lazyArg.asType())) {
+                sb.append(n).append(" == null ? null : ").append(n).append(".value()");
+            } else {
+                sb.append(n);
+            }
+            sb.append(");\n");
+        }
+        appendLog(sb, levelConstant, shortcut, tagLiteral, BUILDER + ".toString()", tr);
+        return true;
+    }
+
+    /**
+     * Append the call passing the message to Log and close the method. Debug and verbose messages
+     * go through {@code Log.d()} and {@code Log.v()}, so ProGuard rules stripping those calls
+     * apply to generated code as well.
+     *
+     * @param shortcut "d" or "v", null for other levels
+     * @param tr       name of the throwable parameter, may be null
+     */
+    private static void appendLog(final StringBuilder sb, final String levelConstant,
+            final String shortcut, final String tag, final String msg, final String tr) {
+        if (shortcut == null) {
+            sb.append("        ").append(LOG).append(".log(").append(levelConstant).append(", ")
+                    .append(tag).append(", ").append(msg).append(", ")
+                    .append(tr == null ? "null" : tr).append(");\n    }\n");
+            return;
+        }
+        final String call = "        " + LOG + "." + shortcut + "(" + tag + ", ";
+        if (tr == null) {
+            sb.append(call).append(msg).append(");\n    }\n");
+            return;
+        }
+        sb.append("        final String log$msg = ").append(msg).append(";\n")
+                .append("        if (").append(tr).append(" == null) {\n    ").append(call)
+                .append("log$msg);\n        } else {\n    ").append(call)
+                .append("log$msg, (Object) ").append(tr).append(");\n        }\n    }\n");
+    }
+
+    private boolean isIntegral(final TypeMirror t) {
+        switch (t.getKind()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return true;
+            case DECLARED:
+                final String name = processingEnv.getTypeUtils().erasure(t).toString();
+                return "java.lang.Byte".equals(name) || "java.lang.Short".equals(name)
+                        || "java.lang.Integer".equals(name) || "java.lang.Long".equals(name)
+                        || "java.math.BigInteger".equals(name);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Split a format into literals and placeholders.
+     *
+     * @param format format
+     * @return literal, conversion char, literal, ..., literal
+     * @throws IllegalArgumentException if the format is malformed or uses unsupported conversions
+     */
+    static List<Object> parse(final String format) {
+        final List<Object> segments = new ArrayList<Object>();
+        final StringBuilder literal = new StringBuilder();
+        final int length = format.length();
+        for (int i = 0; i < length; i++) {
+            final char c = format.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (i + 1 == length) {
+                throw new IllegalArgumentException("'%' at the end");
+            }
+            final char conversion = format.charAt(++i);
+            if (conversion == '%') {
+                literal.append('%');
+            } else if (conversion == 'n') {
+                literal.append('\n');
+            } else if (conversion == 's' || conversion == 'd') {
+                segments.add(literal.toString());
+                segments.add(conversion);
+                literal.setLength(0);
+            } else {
+                throw new IllegalArgumentException("unsupported conversion '%" + conversion
+                        + "' at index " + (i - 1) + ", only %s, %d, %% and %n are supported");
+            }
+        }
+        segments.add(literal.toString());
+        return segments;
+    }
+
+    /**
+     * Render a string as Java literal.
+     */
+    static String literal(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}